@@ -0,0 +1,80 @@
+package com.eashan.shazam_api.controller;
+
+import com.eashan.shazam_api.service.SyntheticCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of matching one clip's fingerprints against a synthetic catalog, per catalog size, clip length,
+ * noise level and share of songs still stored under a legacy hash version. Sample mode reports p50/p99; the recognition accuracy of the same clips is printed
+ * once per trial (matching is deterministic, so it does not change between iterations).
+ * Run with -t to see lookups contend, and see MatchLoadBenchmark for throughput.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class MatchBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param({"1000", "10000", "100000"})
+    private int songs;
+
+    @Param({"1000"})
+    private int fillerPostings;
+
+    @Param({"3", "10"})
+    private double clipSeconds;
+
+    @Param({"0.0", "1.0"})
+    private double noise;
+
+    @Param({"0.0", "0.5"})
+    private double legacyFraction;
+
+    private MatchHarness harness;
+    private SyntheticCatalog.Query[] queries;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        MatchHarness.silenceLogs();
+        SyntheticCatalog catalog = new SyntheticCatalog(songs, fillerPostings, legacyFraction, 42);
+        harness = new MatchHarness(catalog);
+        queries = new SyntheticCatalog.Query[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = catalog.query(i, clipSeconds, noise);
+        }
+
+        MatchHarness.Accuracy accuracy = new MatchHarness.Accuracy();
+        for (SyntheticCatalog.Query query : queries) {
+            accuracy.add(query.getSongId(), harness.match(query));
+        }
+        MatchHarness.console().println("\n" + catalog.describe() + "; " + clipSeconds + " s clips, noise " + noise +
+                ": " + accuracy);
+    }
+
+    @Benchmark
+    public int match(Cursor cursor) {
+        SyntheticCatalog.Query query = queries[cursor.next++ % QUERIES];
+        return harness.match(query);
+    }
+}
@@ -0,0 +1,117 @@
+package com.eashan.shazam_api.controller;
+
+import com.eashan.shazam_api.model.Song;
+import com.eashan.shazam_api.service.FingerprintBuffer;
+import com.eashan.shazam_api.service.LegacyHashVersions;
+import com.eashan.shazam_api.service.SyntheticCatalog;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls MatchController.findMatchingSongWithDetails directly against a SyntheticCatalog: the same voting,
+ * legacy-version lookups, early termination, clustering and scoring as a /match request, without decoding or HTTP.
+ */
+final class MatchHarness {
+
+    private static final PrintStream CONSOLE = System.out;
+
+    private final SyntheticCatalog catalog;
+    private final MatchController controller = new MatchController();
+    private final Method findMatchingSong;
+    private final Field bestSong;
+
+    MatchHarness(SyntheticCatalog catalog) {
+        this.catalog = catalog;
+        ReflectionTestUtils.setField(controller, "songService", catalog.getSongService());
+        ReflectionTestUtils.setField(controller, "legacySongVersions", catalog.getLegacyHashVersions());
+        try {
+            findMatchingSong = MatchController.class.getDeclaredMethod("findMatchingSongWithDetails",
+                    FingerprintBuffer.class, int[].class, FingerprintBuffer[].class, LegacyHashVersions.Lookup.class,
+                    float.class, double.class);
+            findMatchingSong.setAccessible(true);
+            bestSong = findMatchingSong.getReturnType().getDeclaredField("bestSong");
+            bestSong.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("MatchController no longer has the matching method this harness calls", e);
+        }
+    }
+
+    /**
+     * Id of the song the clip matched, or 0 for no confident match
+     */
+    int match(SyntheticCatalog.Query query) {
+        try {
+            Object result = findMatchingSong.invoke(controller, query.getFingerprints(), catalog.legacyHashVersions(),
+                    query.getLegacyFingerprints(), catalog.getLegacyHashVersions().lookup(),
+                    (float) SyntheticCatalog.SAMPLE_RATE, catalog.frameMs());
+            Song song = (Song) bestSong.get(result);
+            return song == null ? 0 : song.getId();
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Match failed", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The controller and fingerprint service log every call; drop it so runs measure matching, not the console
+     */
+    static void silenceLogs() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    static PrintStream console() {
+        return CONSOLE;
+    }
+
+    /**
+     * Recognition tally over a set of clips: in-catalog clips recognised, matched to the wrong song
+     * or missed, and out-of-catalog clips that matched anyway
+     */
+    static final class Accuracy {
+        private int recognised;
+        private int wrong;
+        private int missed;
+        private int outOfCatalog;
+        private int falseMatches;
+
+        void add(int expectedSongId, int matchedSongId) {
+            if (expectedSongId == 0) {
+                outOfCatalog++;
+                if (matchedSongId != 0) {
+                    falseMatches++;
+                }
+            } else if (matchedSongId == expectedSongId) {
+                recognised++;
+            } else if (matchedSongId == 0) {
+                missed++;
+            } else {
+                wrong++;
+            }
+        }
+
+        void addAll(Accuracy other) {
+            recognised += other.recognised;
+            wrong += other.wrong;
+            missed += other.missed;
+            outOfCatalog += other.outOfCatalog;
+            falseMatches += other.falseMatches;
+        }
+
+        double recognisedPercent() {
+            int inCatalog = recognised + wrong + missed;
+            return inCatalog == 0 ? 0 : 100.0 * recognised / inCatalog;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("recognised %.1f%% (%d wrong, %d missed), %d/%d false matches",
+                    recognisedPercent(), wrong, missed, falseMatches, outOfCatalog);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.eashan.shazam_api.controller;
+
+import com.eashan.shazam_api.service.SyntheticCatalog;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Closed-loop load on the matching engine: a fixed number of threads match clips back to back against a
+ * synthetic catalog, for every clip length and noise level, and one line per combination reports
+ * throughput, p50/p99 latency and recognition accuracy side by side.
+ * Arguments: catalog songs (default 10000), threads (default one per core), seconds per run (default 20),
+ * share of songs under a legacy hash version (default 0), e.g.
+ * ./mvnw -P benchmark test-compile exec:exec -Dbenchmark.main=com.eashan.shazam_api.controller.MatchLoadBenchmark -Djmh.args="100000 8 30 0.5"
+ */
+public class MatchLoadBenchmark {
+
+    private static final double[] CLIP_SECONDS = {3, 5, 10};
+    private static final double[] NOISE_LEVELS = {0.0, 0.5, 1.0};
+    private static final int QUERIES = 128;
+    private static final int FILLER_POSTINGS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int songs = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        double legacyFraction = args.length > 3 ? Double.parseDouble(args[3]) : 0.0;
+
+        PrintStream console = MatchHarness.console();
+        MatchHarness.silenceLogs();
+        long startTime = System.currentTimeMillis();
+        SyntheticCatalog catalog = new SyntheticCatalog(songs, FILLER_POSTINGS, legacyFraction, 42);
+        MatchHarness harness = new MatchHarness(catalog);
+        console.println("Catalog: " + catalog.describe() + " (" + (System.currentTimeMillis() - startTime) + " ms)");
+        console.println("Threads: " + threads + ", " + seconds + " s per run after " + Math.max(1, seconds / 4) + " s warmup");
+        console.println();
+        console.println(String.format("%6s %6s %9s %9s %9s  %s", "clip s", "noise", "matches/s", "p50 ms", "p99 ms", "accuracy"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (double clipSeconds : CLIP_SECONDS) {
+                for (double noise : NOISE_LEVELS) {
+                    SyntheticCatalog.Query[] queries = new SyntheticCatalog.Query[QUERIES];
+                    for (int i = 0; i < QUERIES; i++) {
+                        queries[i] = catalog.query(i, clipSeconds, noise);
+                    }
+                    run(executor, harness, queries, threads, Math.max(1, seconds / 4) * 1000L);
+                    Run run = run(executor, harness, queries, threads, seconds * 1000L);
+                    console.println(String.format("%6.0f %6.1f %9.1f %9.2f %9.2f  %s", clipSeconds, noise,
+                            run.latencies.length * 1000.0 / run.elapsedMs, run.percentileMs(50), run.percentileMs(99),
+                            run.accuracy));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Run run(ExecutorService executor, MatchHarness harness, SyntheticCatalog.Query[] queries,
+                           int threads, long durationMs) throws Exception {
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + durationMs;
+        List<Future<Run>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t * queries.length / threads;
+            workers.add(executor.submit(() -> {
+                Run run = new Run();
+                long[] latencies = new long[1024];
+                int count = 0;
+                for (int i = first; System.currentTimeMillis() < deadline; i++) {
+                    SyntheticCatalog.Query query = queries[i % queries.length];
+                    long start = System.nanoTime();
+                    int matched = harness.match(query);
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - start;
+                    run.accuracy.add(query.getSongId(), matched);
+                }
+                run.latencies = Arrays.copyOf(latencies, count);
+                return run;
+            }));
+        }
+
+        Run total = new Run();
+        for (Future<Run> worker : workers) {
+            Run run = worker.get();
+            total.latencies = concat(total.latencies, run.latencies);
+            total.accuracy.addAll(run.accuracy);
+        }
+        total.elapsedMs = System.currentTimeMillis() - startTime;
+        Arrays.sort(total.latencies);
+        return total;
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        long[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    private static class Run {
+        long[] latencies = new long[0];
+        long elapsedMs;
+        MatchHarness.Accuracy accuracy = new MatchHarness.Accuracy();
+
+        double percentileMs(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.eashan.shazam_api.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of turning audio into fingerprints, per clip length and source sample rate:
+ * decoding a stereo WAV to mono samples, and fingerprinting samples already in memory under the
+ * current (resampled) scheme and the native-rate one it replaced. Run with -prof gc for allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FingerprintBenchmark {
+
+    @Param({"10", "60"})
+    private int seconds;
+
+    @Param({"22050", "44100", "48000"})
+    private int sampleRate;
+
+    private double[] samples;
+    private byte[] wav;
+    private AudioProcessor audioProcessor;
+    private FingerprintService fingerprintService;
+
+    @Setup
+    public void setUp() throws IOException {
+        samples = SyntheticAudio.track(42, seconds, sampleRate);
+        wav = SyntheticAudio.wav(samples, sampleRate, 2);
+        audioProcessor = new AudioProcessor();
+        fingerprintService = new FingerprintService();
+    }
+
+    @Benchmark
+    public AudioProcessor.AudioData decode() throws Exception {
+        return audioProcessor.processAudioStream(new ByteArrayInputStream(wav));
+    }
+
+    @Benchmark
+    public FingerprintBuffer fingerprint() {
+        return fingerprintService.generateFingerprint(samples, sampleRate);
+    }
+
+    @Benchmark
+    public FingerprintBuffer fingerprintNativeRate() {
+        return fingerprintService.generateFingerprint(samples, sampleRate, FingerprintService.HASH_VERSION_FRAMES);
+    }
+}
@@ -0,0 +1,106 @@
+package com.eashan.shazam_api.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of the fingerprint stages, for the canonical (1024) and native (4096) window:
+ * Hamming window + FFT + magnitudes (one fused call in FftPlan), peak picking, and hashing one
+ * frame's worth of peak pairs; plus resampling one second of 44.1 kHz audio.
+ * Frames cycle through a few seconds of synthetic audio so no single input gets learned.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerprintStageBenchmark {
+
+    private static final int FRAMES = 64;
+    // Peaks per frame and fan-out, as in FingerprintService
+    private static final int PAIRS_PER_FRAME = 5 * 15;
+
+    @Param({"1024", "4096"})
+    private int windowSize;
+
+    private double[] samples;
+    private double[][] spectra;
+    private double[] magnitudes;
+    private FftPlan fftPlan;
+    private PeakPicker peakPicker;
+    private int[] anchorBins;
+    private int[] targetBins;
+    private int[] deltas;
+    private double[] oneSecond;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        int hop = windowSize / 2;
+        samples = SyntheticAudio.track(7, (double) (FRAMES + 1) * hop / 11025, 11025);
+        fftPlan = new FftPlan(windowSize);
+        magnitudes = new double[windowSize / 2];
+        // FingerprintService's neighbourhood, bin range, threshold and peaks per frame
+        peakPicker = new PeakPicker(10, 10, 512, 0.01, 5);
+
+        spectra = new double[FRAMES][windowSize / 2];
+        for (int f = 0; f < FRAMES; f++) {
+            fftPlan.magnitudes(samples, f * hop, spectra[f]);
+        }
+
+        Random random = new Random(3);
+        anchorBins = new int[PAIRS_PER_FRAME];
+        targetBins = new int[PAIRS_PER_FRAME];
+        deltas = new int[PAIRS_PER_FRAME];
+        for (int i = 0; i < PAIRS_PER_FRAME; i++) {
+            anchorBins[i] = 10 + random.nextInt(502);
+            targetBins[i] = 10 + random.nextInt(502);
+            deltas[i] = random.nextInt(5);
+        }
+        oneSecond = SyntheticAudio.track(11, 1.0, 44100);
+    }
+
+    private int nextFrame() {
+        frame = (frame + 1) % FRAMES;
+        return frame;
+    }
+
+    @Benchmark
+    public double[] windowAndFft() {
+        fftPlan.magnitudes(samples, nextFrame() * (windowSize / 2), magnitudes);
+        return magnitudes;
+    }
+
+    @Benchmark
+    public int[] peakPicking() {
+        return peakPicker.pick(spectra[nextFrame()]);
+    }
+
+    @Benchmark
+    public int pairHashing() {
+        int combined = 0;
+        for (int i = 0; i < PAIRS_PER_FRAME; i++) {
+            combined ^= FingerprintService.generatePackedHash(anchorBins[i], targetBins[i], deltas[i]);
+        }
+        return combined;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[] resampleOneSecond() {
+        return AudioProcessor.resample(oneSecond, 44100, FingerprintService.CANONICAL_SAMPLE_RATE);
+    }
+}
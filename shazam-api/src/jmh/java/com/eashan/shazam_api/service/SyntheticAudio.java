@@ -0,0 +1,78 @@
+package com.eashan.shazam_api.service;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Deterministic benchmark audio: a few voices playing random notes plus low-level noise, all drawn
+ * from a seed. The same seed gives the same notes at every sample rate, and different seeds give
+ * different "songs", so runs and forks always process exactly the same signal.
+ */
+final class SyntheticAudio {
+
+    private static final int VOICES = 4;
+    private static final double NOISE_LEVEL = 0.02;
+
+    private SyntheticAudio() {
+    }
+
+    static double[] track(long seed, double seconds, int sampleRate) {
+        Random notes = new Random(seed);
+        int length = (int) (seconds * sampleRate);
+        double[] samples = new double[length];
+
+        for (int voice = 0; voice < VOICES; voice++) {
+            double amplitude = 0.4 / (voice + 1);
+            double phase = 0;
+            double frequency = 0;
+            int noteEnd = 0;
+            for (int i = 0; i < length; i++) {
+                if (i >= noteEnd) {
+                    frequency = 150 + notes.nextDouble() * 3000;
+                    noteEnd = i + (int) ((0.15 + notes.nextDouble() * 0.35) * sampleRate);
+                }
+                phase += 2 * Math.PI * frequency / sampleRate;
+                samples[i] += amplitude * Math.sin(phase);
+            }
+        }
+        return addNoise(samples, seed, NOISE_LEVEL);
+    }
+
+    /**
+     * Copy of samples with uniform noise of the given peak level added
+     */
+    static double[] addNoise(double[] samples, long seed, double level) {
+        Random noise = new Random(~seed);
+        double[] noisy = new double[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            noisy[i] = samples[i] + level * (2 * noise.nextDouble() - 1);
+        }
+        return noisy;
+    }
+
+    /**
+     * 16-bit little-endian WAV file of the samples, with every channel carrying the same signal
+     */
+    static byte[] wav(double[] samples, int sampleRate, int channels) throws IOException {
+        byte[] pcm = new byte[samples.length * channels * 2];
+        int p = 0;
+        for (double sample : samples) {
+            short value = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample * 32767)));
+            for (int ch = 0; ch < channels; ch++) {
+                pcm[p++] = (byte) value;
+                pcm[p++] = (byte) (value >> 8);
+            }
+        }
+        AudioFormat format = new AudioFormat(sampleRate, 16, channels, true, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(pcm.length + 64);
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm), format, samples.length),
+                AudioFileFormat.Type.WAVE, out);
+        return out.toByteArray();
+    }
+}
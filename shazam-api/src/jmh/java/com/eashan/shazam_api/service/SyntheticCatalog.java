@@ -0,0 +1,266 @@
+package com.eashan.shazam_api.service;
+
+import com.eashan.shazam_api.model.Song;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * An in-memory catalog for matching benchmarks: a loaded FingerprintIndex, a stop-list and a SongService
+ * wired by hand, with no database behind them. The first songs are real fingerprints of SyntheticAudio
+ * tracks, so clips cut from them can be recognised. The rest are filler songs whose hashes are drawn from
+ * those real fingerprints at random offsets, which keeps a real catalog's hash popularity (common hashes
+ * stay common) while a filler song costs a fraction of the heap and no fingerprinting time.
+ * A share of the songs can be stored under the SHA-1 legacy hash version, like a catalog the re-hash job has
+ * not finished yet: matching then also looks up the clip's legacy hashes and checks every posting's song
+ * version. Hashing the clip under the legacy version (an extra FFT pass) is not part of the match time.
+ */
+public final class SyntheticCatalog {
+
+    public static final int SAMPLE_RATE = (int) FingerprintService.CANONICAL_SAMPLE_RATE;
+    public static final double SONG_SECONDS = 30;
+    private static final int MAX_TRACKS = 100;
+    private static final int SHARDS = 8;
+    private static final int LEGACY_VERSION = FingerprintService.HASH_VERSION_SHA1;
+
+    // Same defaults as HashStopList
+    private static final double STOP_MAX_SONG_FRACTION = 0.05;
+    private static final int STOP_MIN_SONGS = 50;
+
+    private final int songCount;
+    private final int trackCount;
+    private final long totalPostings;
+    private final int stoppedHashes;
+    private final double legacyFraction;
+    private final int legacySongs;
+    private final FingerprintService fingerprintService = new FingerprintService();
+    private final FingerprintIndex fingerprintIndex = new FingerprintIndex();
+    private final HashStopList hashStopList = new HashStopList();
+    private final LegacyHashVersions legacyHashVersions = new LegacyHashVersions();
+    private final SongService songService;
+
+    /**
+     * A clip to match, its legacy-version hashes (one buffer per legacyHashVersions() entry) and the song
+     * it was cut from (0 for clips of songs outside the catalog)
+     */
+    public static final class Query {
+        private final int songId;
+        private final FingerprintBuffer fingerprints;
+        private final FingerprintBuffer[] legacyFingerprints;
+
+        Query(int songId, FingerprintBuffer fingerprints, FingerprintBuffer[] legacyFingerprints) {
+            this.songId = songId;
+            this.fingerprints = fingerprints;
+            this.legacyFingerprints = legacyFingerprints;
+        }
+
+        public int getSongId() { return songId; }
+        public FingerprintBuffer getFingerprints() { return fingerprints; }
+        public FingerprintBuffer[] getLegacyFingerprints() { return legacyFingerprints; }
+    }
+
+    public SyntheticCatalog(int songCount, int fillerPostings, long seed) {
+        this(songCount, fillerPostings, 0.0, seed);
+    }
+
+    /**
+     * Catalog of songCount songs (ids 1..songCount), filler songs carrying fillerPostings fingerprints each.
+     * legacyFraction of the songs, spread evenly over the ids, are stored under the legacy hash version.
+     */
+    public SyntheticCatalog(int songCount, int fillerPostings, double legacyFraction, long seed) {
+        this.songCount = songCount;
+        this.trackCount = Math.min(songCount, MAX_TRACKS);
+        this.legacyFraction = legacyFraction;
+
+        PostingTable[] tables = new PostingTable[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            tables[i] = new PostingTable();
+        }
+
+        // Every real track under the current version, and under the legacy one if any song uses it
+        int[] versions = legacyFraction > 0
+                ? new int[]{FingerprintService.CURRENT_HASH_VERSION, LEGACY_VERSION}
+                : new int[]{FingerprintService.CURRENT_HASH_VERSION};
+        FingerprintBuffer[][] tracks = new FingerprintBuffer[versions.length][trackCount];
+        for (int t = 0; t < trackCount; t++) {
+            double[] samples = SyntheticAudio.track(trackSeed(t + 1), SONG_SECONDS, SAMPLE_RATE);
+            for (int v = 0; v < versions.length; v++) {
+                tracks[v][t] = fingerprintService.generateFingerprint(samples, SAMPLE_RATE, versions[v]);
+            }
+            FingerprintBuffer stored = tracks[versionIndex(t + 1)][t];
+            for (int i = 0; i < SHARDS; i++) {
+                IndexShard.addAll(tables[i], t + 1, stored, i, SHARDS);
+            }
+        }
+
+        // Every real fingerprint of a version once, so filler hashes follow the real hash frequencies
+        int[][] pools = new int[versions.length][];
+        for (int v = 0; v < versions.length; v++) {
+            int poolSize = 0;
+            for (FingerprintBuffer track : tracks[v]) {
+                poolSize += track.size();
+            }
+            pools[v] = new int[poolSize];
+            int p = 0;
+            for (FingerprintBuffer track : tracks[v]) {
+                for (int i = 0; i < track.size(); i++) {
+                    pools[v][p++] = track.hash(i);
+                }
+            }
+        }
+
+        Random random = new Random(seed);
+        for (int songId = trackCount + 1; songId <= songCount; songId++) {
+            int v = versionIndex(songId);
+            int songOffsets = (int) (SONG_SECONDS * 1000 / FingerprintService.offsetUnitMs(versions[v], SAMPLE_RATE));
+            for (int i = 0; i < fillerPostings; i++) {
+                int hash = pools[v][random.nextInt(pools[v].length)];
+                tables[IndexShard.shardOf(hash, SHARDS)].add(songId, hash, random.nextInt(songOffsets));
+            }
+        }
+
+        int[] legacySongIds = new int[songCount];
+        int legacy = 0;
+        for (int songId = 1; songId <= songCount; songId++) {
+            if (isLegacy(songId)) {
+                legacySongIds[legacy++] = songId;
+            }
+        }
+        int[] legacyVersions = new int[legacy];
+        Arrays.fill(legacyVersions, LEGACY_VERSION);
+        ReflectionTestUtils.setField(legacyHashVersions, "table",
+                new LegacyHashVersions.Table(Arrays.copyOf(legacySongIds, legacy), legacyVersions));
+        this.legacySongs = legacy;
+
+        ReflectionTestUtils.setField(fingerprintIndex, "configuredShards", SHARDS);
+        fingerprintIndex.init();
+        IndexShard[] shards = (IndexShard[]) ReflectionTestUtils.getField(fingerprintIndex, "shards");
+        long postings = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i].replace(tables[i]);
+            postings += tables[i].getTotalPostings();
+        }
+        ReflectionTestUtils.setField(fingerprintIndex, "ready", true);
+        this.totalPostings = postings;
+
+        int[] stopped = stopList(tables);
+        ReflectionTestUtils.setField(hashStopList, "stoppedHashes", stopped);
+        this.stoppedHashes = stopped.length;
+
+        songService = new SongService() {
+            @Override
+            public Map<Long, Song> findByIds(List<Long> songIds) {
+                Map<Long, Song> songs = new HashMap<>();
+                for (Long songId : songIds) {
+                    if (songId >= 1 && songId <= SyntheticCatalog.this.songCount) {
+                        Song song = new Song("Song " + songId, "Synthetic", null);
+                        song.setId(songId.intValue());
+                        songs.put(songId, song);
+                    }
+                }
+                return songs;
+            }
+        };
+        ReflectionTestUtils.setField(songService, "fingerprintIndex", fingerprintIndex);
+        ReflectionTestUtils.setField(songService, "hashStopList", hashStopList);
+    }
+
+    /**
+     * A clip of the given length and added noise level. One in eight clips comes from a track that is not
+     * in the catalog, to count false matches.
+     */
+    public Query query(long seed, double seconds, double noise) {
+        Random random = new Random(seed);
+        boolean inCatalog = seed % 8 != 7;
+        int songId = inCatalog ? 1 + random.nextInt(trackCount) : 0;
+        double[] track = SyntheticAudio.track(inCatalog ? trackSeed(songId) : ~seed, SONG_SECONDS, SAMPLE_RATE);
+
+        int length = (int) (seconds * SAMPLE_RATE);
+        int start = random.nextInt(Math.max(1, track.length - length));
+        double[] clip = SyntheticAudio.addNoise(
+                Arrays.copyOfRange(track, start, Math.min(track.length, start + length)), seed, noise);
+        FingerprintBuffer[] legacyFingerprints = new FingerprintBuffer[legacySongs > 0 ? 1 : 0];
+        if (legacySongs > 0) {
+            legacyFingerprints[0] = fingerprintService.generateFingerprint(clip, SAMPLE_RATE, LEGACY_VERSION);
+        }
+        return new Query(songId, fingerprintService.generateFingerprint(clip, SAMPLE_RATE), legacyFingerprints);
+    }
+
+    /**
+     * Hash versions the clips are also hashed under, as MatchController passes them
+     */
+    public int[] legacyHashVersions() {
+        return legacySongs > 0 ? new int[]{LEGACY_VERSION} : new int[0];
+    }
+
+    public SongService getSongService() {
+        return songService;
+    }
+
+    public LegacyHashVersions getLegacyHashVersions() {
+        return legacyHashVersions;
+    }
+
+    public double frameMs() {
+        return FingerprintService.offsetUnitMs(FingerprintService.CURRENT_HASH_VERSION, SAMPLE_RATE);
+    }
+
+    public String describe() {
+        return songCount + " songs (" + trackCount + " real tracks, " + legacySongs + " under legacy hash version " +
+                LEGACY_VERSION + "), " + totalPostings + " postings, " + stoppedHashes + " stopped hashes";
+    }
+
+    /**
+     * legacyFraction of the ids, evenly spread
+     */
+    private boolean isLegacy(int songId) {
+        return Math.floor(songId * legacyFraction) != Math.floor((songId - 1) * legacyFraction);
+    }
+
+    private int versionIndex(int songId) {
+        return isLegacy(songId) ? 1 : 0;
+    }
+
+    private static long trackSeed(int songId) {
+        return 1000L + songId;
+    }
+
+    /**
+     * What HashStopList.refresh() would stop: hashes in at least max(50, 5% of all songs) songs
+     */
+    private int[] stopList(PostingTable[] tables) {
+        int threshold = Math.max(STOP_MIN_SONGS, (int) Math.ceil(STOP_MAX_SONG_FRACTION * songCount));
+        // Last hash list each song was seen in, to count distinct songs without a set per hash
+        int[] seenIn = new int[songCount + 1];
+        int list = 0;
+        int[] stopped = new int[16];
+        int count = 0;
+        for (PostingTable table : tables) {
+            IndexSegment.Cursor cursor = table.cursor();
+            while (cursor.next()) {
+                list++;
+                int songs = 0;
+                for (long posting : cursor.postings()) {
+                    int songId = PostingTable.songId(posting);
+                    if (seenIn[songId] != list) {
+                        seenIn[songId] = list;
+                        songs++;
+                    }
+                }
+                if (songs >= threshold) {
+                    if (count == stopped.length) {
+                        stopped = Arrays.copyOf(stopped, count * 2);
+                    }
+                    stopped[count++] = cursor.hash();
+                }
+            }
+        }
+        stopped = Arrays.copyOf(stopped, count);
+        Arrays.sort(stopped);
+        return stopped;
+    }
+}
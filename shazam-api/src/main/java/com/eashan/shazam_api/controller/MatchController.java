@@ -1,14 +1,28 @@
 package com.eashan.shazam_api.controller;
 
+import com.eashan.shazam_api.exceptions.MatchRejectedException;
+import com.eashan.shazam_api.exceptions.MatchTimeoutException;
 import com.eashan.shazam_api.model.Song;
+import com.eashan.shazam_api.service.AlignmentClusters;
 import com.eashan.shazam_api.service.AudioProcessor;
+import com.eashan.shazam_api.service.FingerprintBuffer;
+import com.eashan.shazam_api.service.FingerprintIndex;
+import com.eashan.shazam_api.service.FingerprintMatches;
 import com.eashan.shazam_api.service.FingerprintService;
+import com.eashan.shazam_api.service.HashStopList;
+import com.eashan.shazam_api.service.LegacyHashVersions;
+import com.eashan.shazam_api.service.MatchExecutor;
 import com.eashan.shazam_api.service.SongService;
+import com.eashan.shazam_api.service.VoteTable;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -22,20 +36,48 @@ public class MatchController {
     private SongService songService;
 
     @Autowired
-    private AudioProcessor audioProcessor;
+    private FingerprintIndex fingerprintIndex;
+
+    @Autowired
+    private HashStopList hashStopList;
+
+    @Autowired
+    private MatchExecutor matchExecutor;
+
+    @Autowired
+    private LegacyHashVersions legacySongVersions;
+
+    // Also hash clips under the versions of songs not re-hashed yet; costs a native-rate FFT pass and a
+    // pairing pass per legacy version. Off: those songs are not matched until the re-hash job reaches them.
+    @Value("${match.legacy-hash-versions:true}")
+    private boolean matchLegacyVersions;
 
     private static final boolean DEBUG_MODE = true;
     private static final int MIN_CONFIDENCE_SCORE = 8;
     private static final double RELATIVE_STRENGTH_FACTOR = 1.3; // Reduced from 1.5
-    private static final int MAX_ALIGNMENT_CLUSTER_SIZE = 150; // Increased tolerance
+    private static final int MAX_ALIGNMENT_CLUSTER_SIZE = 150; // ms, increased tolerance
     private static final double MIN_MATCH_RATIO = 0.0002; // Reduced threshold
     private static final double MIN_NORMALIZED_SCORE = 0.000040; // Reduced threshold
     private static final int MIN_CLUSTER_SIZE = 3;
     private static final double CLUSTER_QUALITY_WEIGHT = 2.0; // New: Weight for cluster quality
     private static final double DENSITY_WEIGHT = 1.5; // New: Weight for match density
+    private static final int MAX_SCORED_CANDIDATES = 100; // Songs with weaker best alignment bins are pruned before clustering
+    private static final int MAX_REPORTED_CANDIDATES = 10; // Only these get song metadata and analysis entries
 
+    // Incremental matching: look fingerprints up in time-ordered batches and stop once one song clearly leads
+    private static final boolean EARLY_TERMINATION = true;
+    private static final int MATCH_BATCH_SIZE = 500;
+    private static final double EARLY_STOP_MARGIN = 2.0; // Safety factor on both confidence thresholds
+
+    /**
+     * Match an uploaded clip. Runs on the match executor; sheds load with 429 / 503 when it is saturated.
+     */
     @PostMapping
-    public Map<String, Object> matchAudio(@RequestParam("file") MultipartFile file) {
+    public Map<String, Object> matchAudio(@RequestParam("file") MultipartFile file) throws Exception {
+        return matchExecutor.run(() -> matchFile(file));
+    }
+
+    private Map<String, Object> matchFile(MultipartFile file) {
         Map<String, Object> response = new HashMap<>();
 
         try {
@@ -51,29 +93,36 @@ public class MatchController {
                 return response;
             }
 
-            // Process audio using the unified processor
-            AudioProcessor.AudioData audioData = audioProcessor.processAudioStream(file.getInputStream());
+            // Songs that have not been re-hashed yet still carry fingerprints of an older hash version
+            LegacyHashVersions.Lookup legacyVersions = legacySongVersions.lookup();
+            int[] legacyHashVersions = legacyHashVersions(legacyVersions);
+            int[] hashVersions = withCurrentVersion(legacyHashVersions);
+
+            // Decode and fingerprint the clip as a stream (legacy-version hashes of the same peaks while needed)
+            FingerprintService.FingerprintResult fingerprintResult = fingerprintService.fingerprintAudio(file, hashVersions);
+            AudioProcessor.AudioInfo audioInfo = fingerprintResult.getAudioInfo();
+            FingerprintBuffer fingerprints = fingerprintResult.getFingerprints();
+            FingerprintBuffer[] legacyFingerprints = new FingerprintBuffer[legacyHashVersions.length];
+            for (int v = 0; v < legacyHashVersions.length; v++) {
+                legacyFingerprints[v] = fingerprintResult.getFingerprints(legacyHashVersions[v]);
+            }
+            double frameMs = FingerprintService.offsetUnitMs(FingerprintService.CURRENT_HASH_VERSION,
+                    audioInfo.getSampleRate());
 
             if (DEBUG_MODE) {
-                System.out.println("✅ Audio processed: " + audioData.getSamples().length + " samples");
-                System.out.println("⏱️ Duration: " + String.format("%.2f", audioData.getDurationSeconds()) + " seconds");
-                System.out.println("🎵 Sample rate: " + audioData.getSampleRate() + " Hz");
-                System.out.println("🔊 Channels: " + audioData.getChannels());
+                System.out.println("✅ Audio processed: " + audioInfo.getSampleCount() + " samples");
+                System.out.println("⏱️ Duration: " + String.format("%.2f", audioInfo.getDurationSeconds()) + " seconds");
+                System.out.println("🎵 Sample rate: " + audioInfo.getSampleRate() + " Hz");
+                System.out.println("🔊 Channels: " + audioInfo.getChannels());
             }
 
-            // Generate fingerprints
-            List<int[]> fingerprints = fingerprintService.generateFingerprint(
-                    audioData.getSamples(),
-                    audioData.getSampleRate()
-            );
-
             if (DEBUG_MODE) {
                 System.out.println("🔍 Generated " + fingerprints.size() + " fingerprints");
                 if (fingerprints.size() > 0) {
                     System.out.println("🔹 Sample fingerprints:");
                     for (int i = 0; i < Math.min(5, fingerprints.size()); i++) {
-                        int[] fp = fingerprints.get(i);
-                        System.out.println("   [" + i + "] Hash: " + fp[0] + ", Offset: " + fp[1] + "ms");
+                        System.out.println("   [" + i + "] Hash: " + fingerprints.hash(i) + ", Offset: " +
+                                Math.round(fingerprints.offset(i) * frameMs) + "ms (frame " + fingerprints.offset(i) + ")");
                     }
                 }
             }
@@ -84,44 +133,20 @@ public class MatchController {
             }
 
             // Find matches
-            MatchResult matchResult = findMatchingSongWithDetails(fingerprints);
+            MatchResult matchResult = findMatchingSongWithDetails(fingerprints, legacyHashVersions, legacyFingerprints,
+                    legacyVersions, audioInfo.getSampleRate(), frameMs);
 
             // Build response
-            if (matchResult.bestSong != null) {
-                if (DEBUG_MODE) {
-                    System.out.println("🎯 MATCH FOUND!");
-                    System.out.println("   🎵 " + matchResult.bestSong.getTitle() + " - " + matchResult.bestSong.getArtist());
-                    System.out.println("   📊 Score: " + matchResult.bestScore + " (ratio: " + String.format("%.4f", matchResult.matchRatio) + ")");
-                    System.out.println("   🎯 Normalized: " + String.format("%.6f", matchResult.bestNormalizedScore));
-                    System.out.println("   🏆 Confidence: " + String.format("%.2f", matchResult.confidenceScore));
-                    System.out.println("   🔄 Quality: " + String.format("%.2f", matchResult.qualityScore));
-                }
-
-                response.put("status", "success");
-                response.put("match", true);
-                response.put("title", matchResult.bestSong.getTitle());
-                response.put("artist", matchResult.bestSong.getArtist());
-                response.put("album", matchResult.bestSong.getAlbum());
-                response.put("coverUrl", matchResult.bestSong.getCoverUrl());
-                if (matchResult.bestSong.getSongUrl() != null) {
-                    response.put("songUrl", matchResult.bestSong.getSongUrl());
-                }
-            } else {
-                if (DEBUG_MODE) {
-                    System.out.println("❌ No match found");
-                    System.out.println("   Reasons: " + String.join(", ", matchResult.confidenceReasons));
-                }
-
-                response.put("status", "success");
-                response.put("match", false);
-                response.put("message", "No matching song found");
-            }
+            putMatchResult(response, matchResult);
 
             // Add debug information
             Map<String, Object> debugInfo = new HashMap<>();
-            debugInfo.put("sampleRate", audioData.getSampleRate());
-            debugInfo.put("duration", audioData.getDurationSeconds());
+            debugInfo.put("sampleRate", audioInfo.getSampleRate());
+            debugInfo.put("duration", audioInfo.getDurationSeconds());
             debugInfo.put("fingerprints", fingerprints.size());
+            debugInfo.put("hashesConsumed", matchResult.hashesConsumed);
+            debugInfo.put("earlyTerminated", matchResult.earlyTerminated);
+            debugInfo.put("legacyHashSongs", legacyVersions.getSongCount());
             debugInfo.put("bestScore", matchResult.bestScore);
             debugInfo.put("matchRatio", matchResult.matchRatio);
             debugInfo.put("bestNormalizedScore", matchResult.bestNormalizedScore);
@@ -145,7 +170,109 @@ public class MatchController {
         return response;
     }
 
-    private void runDatabaseDiagnostics(List<int[]> fingerprints) {
+    /**
+     * Match a clip while it is still uploading. The request body is the raw audio file (WAV or MP3,
+     * typically sent with chunked transfer encoding); it is decoded and fingerprinted as it arrives,
+     * and the votes are re-evaluated after every MATCH_BATCH_SIZE new fingerprints.
+     * Replies as soon as a song is confidently matched, without reading the rest of the body;
+     * otherwise scores the whole clip once the upload ends, like POST /match.
+     * The body is read and decoded on the request thread, so a slow upload holds no match executor
+     * worker; each batch of lookups and scoring runs on the executor and can be shed with 429 / 503.
+     * The batches share one match executor session, so the whole request, upload included, has the
+     * usual deadline and counts once in /match/stats.
+     */
+    @PostMapping("/stream")
+    public Map<String, Object> matchStream(HttpServletRequest request) {
+        return matchUpload(request);
+    }
+
+    private Map<String, Object> matchUpload(HttpServletRequest request) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            if (DEBUG_MODE) {
+                System.out.println("\n🎵 ===== STREAMING MATCH REQUEST START =====");
+                System.out.println("📁 Content-Type: " + request.getContentType());
+            }
+
+            LegacyHashVersions.Lookup legacyVersions = legacySongVersions.lookup();
+            FingerprintService.FingerprintResult fingerprintResult;
+            MatchResult matchResult;
+            try (MatchExecutor.Session session = matchExecutor.openSession()) {
+                LiveMatch live = new LiveMatch(session, legacyHashVersions(legacyVersions), legacyVersions);
+                fingerprintResult = fingerprintService.fingerprintLive(
+                        request.getInputStream(), withCurrentVersion(live.legacyHashVersions), live::onChunk);
+                matchResult = live.matched != null ? live.matched : live.finish(fingerprintResult);
+            }
+            AudioProcessor.AudioInfo audioInfo = fingerprintResult.getAudioInfo();
+
+            putMatchResult(response, matchResult);
+
+            Map<String, Object> debugInfo = new HashMap<>();
+            debugInfo.put("sampleRate", audioInfo.getSampleRate());
+            debugInfo.put("secondsRead", audioInfo.getDurationSeconds());
+            debugInfo.put("fingerprints", fingerprintResult.getFingerprints().size());
+            debugInfo.put("hashesConsumed", matchResult.hashesConsumed);
+            debugInfo.put("earlyTerminated", matchResult.earlyTerminated);
+            debugInfo.put("legacyHashSongs", legacyVersions.getSongCount());
+            debugInfo.put("bestScore", matchResult.bestScore);
+            debugInfo.put("confidenceScore", matchResult.confidenceScore);
+            debugInfo.put("confidenceReasons", matchResult.confidenceReasons);
+            response.put("debug", debugInfo);
+
+            if (DEBUG_MODE) {
+                System.out.println("🏁 ===== STREAMING MATCH REQUEST END (" +
+                        String.format("%.2f", audioInfo.getDurationSeconds()) + "s of audio read) =====\n");
+            }
+
+        } catch (MatchRejectedException | MatchTimeoutException e) {
+            // Shed like POST /match (429 / 503)
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+            response.put("status", "error");
+            response.put("message", "Error processing audio: " + e.getMessage());
+        }
+
+        return response;
+    }
+
+    /**
+     * Fill in the match fields of a response, logging the outcome
+     */
+    private void putMatchResult(Map<String, Object> response, MatchResult matchResult) {
+        if (matchResult.bestSong != null) {
+            if (DEBUG_MODE) {
+                System.out.println("🎯 MATCH FOUND!");
+                System.out.println("   🎵 " + matchResult.bestSong.getTitle() + " - " + matchResult.bestSong.getArtist());
+                System.out.println("   📊 Score: " + matchResult.bestScore + " (ratio: " + String.format("%.4f", matchResult.matchRatio) + ")");
+                System.out.println("   🎯 Normalized: " + String.format("%.6f", matchResult.bestNormalizedScore));
+                System.out.println("   🏆 Confidence: " + String.format("%.2f", matchResult.confidenceScore));
+                System.out.println("   🔄 Quality: " + String.format("%.2f", matchResult.qualityScore));
+            }
+
+            response.put("status", "success");
+            response.put("match", true);
+            response.put("title", matchResult.bestSong.getTitle());
+            response.put("artist", matchResult.bestSong.getArtist());
+            response.put("album", matchResult.bestSong.getAlbum());
+            response.put("coverUrl", matchResult.bestSong.getCoverUrl());
+            if (matchResult.bestSong.getSongUrl() != null) {
+                response.put("songUrl", matchResult.bestSong.getSongUrl());
+            }
+        } else {
+            if (DEBUG_MODE) {
+                System.out.println("❌ No match found");
+                System.out.println("   Reasons: " + String.join(", ", matchResult.confidenceReasons));
+            }
+
+            response.put("status", "success");
+            response.put("match", false);
+            response.put("message", "No matching song found");
+        }
+    }
+
+    private void runDatabaseDiagnostics(FingerprintBuffer fingerprints) {
         System.out.println("🔍 === DATABASE DIAGNOSTICS ===");
         int totalSongs = songService.getTotalSongCount();
         int totalFingerprints = songService.getTotalFingerprintCount();
@@ -166,12 +293,18 @@ public class MatchController {
         int matchCount = 0;
         Map<Integer, Integer> hashMatches = new HashMap<>();
 
+        int[] testHashes = new int[testCount];
         for (int i = 0; i < testCount; i++) {
-            int hash = fingerprints.get(i)[0];
-            List<Map<String, Object>> matches = songService.getMatchingFingerprints(hash);
-            if (!matches.isEmpty()) {
+            testHashes[i] = fingerprints.hash(i);
+        }
+        FingerprintMatches matches = songService.getMatchingFingerprints(testHashes);
+
+        for (int hash : testHashes) {
+            int hashIndex = matches.indexOf(hash);
+            int found = hashIndex < 0 ? 0 : matches.end(hashIndex) - matches.start(hashIndex);
+            if (found > 0) {
                 matchCount++;
-                hashMatches.put(hash, matches.size());
+                hashMatches.put(hash, found);
             }
         }
 
@@ -188,13 +321,29 @@ public class MatchController {
             // Show some sample hashes for debugging
             System.out.println("🔹 Sample query hashes:");
             for (int i = 0; i < Math.min(5, fingerprints.size()); i++) {
-                System.out.println("   " + fingerprints.get(i)[0]);
+                System.out.println("   " + fingerprints.hash(i));
             }
         }
         System.out.println("=== END DIAGNOSTICS ===\n");
     }
 
-    private MatchResult findMatchingSongWithDetails(List<int[]> clipFingerprints) {
+    /**
+     * Legacy versions to hash the clip under as well (none if that is turned off)
+     */
+    private int[] legacyHashVersions(LegacyHashVersions.Lookup legacyVersions) {
+        return matchLegacyVersions ? legacyVersions.getVersions() : new int[0];
+    }
+
+    private static int[] withCurrentVersion(int[] legacyHashVersions) {
+        int[] hashVersions = new int[legacyHashVersions.length + 1];
+        hashVersions[0] = FingerprintService.CURRENT_HASH_VERSION;
+        System.arraycopy(legacyHashVersions, 0, hashVersions, 1, legacyHashVersions.length);
+        return hashVersions;
+    }
+
+    private MatchResult findMatchingSongWithDetails(FingerprintBuffer clipFingerprints, int[] legacyHashVersions,
+                                                    FingerprintBuffer[] legacyFingerprints, LegacyHashVersions.Lookup legacyVersions,
+                                                    float sampleRate, double frameMs) {
         MatchResult result = new MatchResult();
         result.songAnalysis = new ArrayList<>();
         result.confidenceReasons = new ArrayList<>();
@@ -205,49 +354,60 @@ public class MatchController {
         }
 
         // Build song match data
-        Map<Long, Map<Integer, Integer>> songVotes = new HashMap<>();
-        Map<Long, Integer> songTotalMatches = new HashMap<>();
-        Map<Long, Song> songCache = new HashMap<>();
+        VoteTable votes = new VoteTable(clipFingerprints.size() * 4);
 
         if (DEBUG_MODE) {
             System.out.println("🔍 Processing " + clipFingerprints.size() + " fingerprints...");
         }
 
+        // Current-version hashes vote for re-hashed songs, each legacy version's hashes for its songs.
+        // Legacy buffers come from the native-rate audio, so their batches cover the same share of the clip
+        // rather than the same indices. Votes are counted in current frames; legacy deltas are converted.
+        double[] legacyDeltaScales = new double[legacyHashVersions.length];
+        for (int v = 0; v < legacyHashVersions.length; v++) {
+            legacyDeltaScales[v] = FingerprintService.offsetUnitMs(legacyHashVersions[v], sampleRate) / frameMs;
+        }
         int totalDbMatches = 0;
+        int consumed = 0;
+        while (consumed < clipFingerprints.size()) {
+            // Stop between batches once the executor has given up on this request
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Match cancelled after " + consumed + " fingerprints");
+            }
+            int batchEnd = EARLY_TERMINATION
+                    ? Math.min(clipFingerprints.size(), consumed + MATCH_BATCH_SIZE)
+                    : clipFingerprints.size();
+            totalDbMatches += collectVotes(clipFingerprints, consumed, batchEnd, legacyVersions,
+                    FingerprintService.CURRENT_HASH_VERSION, 1.0, votes);
+            for (int v = 0; v < legacyHashVersions.length; v++) {
+                int legacyFrom = (int) ((long) consumed * legacyFingerprints[v].size() / clipFingerprints.size());
+                int legacyTo = (int) ((long) batchEnd * legacyFingerprints[v].size() / clipFingerprints.size());
+                totalDbMatches += collectVotes(legacyFingerprints[v], legacyFrom, legacyTo, legacyVersions,
+                        legacyHashVersions[v], legacyDeltaScales[v], votes);
+            }
+            consumed = batchEnd;
 
-        // Collect matches for each fingerprint
-        for (int[] fp : clipFingerprints) {
-            int hash = fp[0];
-            int offsetInClip = fp[1];
-
-            List<Map<String, Object>> matches = songService.getMatchingFingerprints(hash);
-            totalDbMatches += matches.size();
-
-            for (Map<String, Object> match : matches) {
-                Long songId = ((Number) match.get("songId")).longValue();
-                Integer offsetInSong = (Integer) match.get("offset");
-                int delta = offsetInSong - offsetInClip;
-
-                songTotalMatches.put(songId, songTotalMatches.getOrDefault(songId, 0) + 1);
-
-                songVotes.putIfAbsent(songId, new HashMap<>());
-                songVotes.get(songId).put(delta, songVotes.get(songId).getOrDefault(delta, 0) + 1);
-
-                // Cache song info
-                if (!songCache.containsKey(songId)) {
-                    Song song = songService.findById(songId);
-                    if (song != null) {
-                        songCache.put(songId, song);
-                    }
-                }
+            if (consumed < clipFingerprints.size() && hasClearLeader(votes)) {
+                result.earlyTerminated = true;
+                break;
             }
         }
+        result.hashesConsumed = consumed;
 
         if (DEBUG_MODE) {
-            System.out.println("🔍 Found " + totalDbMatches + " total DB matches across " + songVotes.size() + " songs");
+            System.out.println("🔍 Found " + totalDbMatches + " total DB matches across " + votes.getSongCount() + " songs" +
+                    " from " + consumed + "/" + clipFingerprints.size() + " fingerprints" +
+                    (result.earlyTerminated ? " (stopped early)" : ""));
         }
 
-        if (songVotes.isEmpty()) {
+        return scoreVotes(votes, consumed, frameMs, result);
+    }
+
+    /**
+     * Cluster and score the leading candidates of a vote table; consumed is the number of clip fingerprints looked up
+     */
+    private MatchResult scoreVotes(VoteTable votes, int consumed, double frameMs, MatchResult result) {
+        if (votes.getSongCount() == 0) {
             result.confidenceReasons.add("No matching fingerprints found in database");
             return result;
         }
@@ -257,17 +417,26 @@ public class MatchController {
         Map<Long, Double> normalizedScores = new HashMap<>();
         Map<Long, Double> qualityScores = new HashMap<>();
         Map<Long, Double> finalScores = new HashMap<>();
+        Map<Long, Map<String, Object>> songAnalysis = new HashMap<>();
+
+        // Only the songs with the strongest single-delta bins get their offset histograms clustered and scored
+        VoteTable.Candidates candidates = votes.topCandidates(MAX_SCORED_CANDIDATES);
+        int maxClusterSpread = Math.max(1, (int) Math.round(MAX_ALIGNMENT_CLUSTER_SIZE / frameMs));
 
         // Get fingerprint counts for all candidate songs efficiently
-        List<Long> songIds = new ArrayList<>(songVotes.keySet());
+        List<Long> songIds = new ArrayList<>();
+        for (int c = 0; c < candidates.size(); c++) {
+            songIds.add((long) candidates.songId(c));
+        }
         Map<Long, Integer> songFingerprintCounts = songService.getFingerprintCountsForSongs(songIds);
 
-        for (Map.Entry<Long, Map<Integer, Integer>> entry : songVotes.entrySet()) {
-            Long songId = entry.getKey();
-            Map<Integer, Integer> offsetCounts = entry.getValue();
+        for (int c = 0; c < candidates.size(); c++) {
+            Long songId = (long) candidates.songId(c);
+            int songMatches = candidates.totalVotes(c);
 
-            // Create improved clusters
-            List<AlignmentCluster> clusters = createImprovedTimeClusters(offsetCounts);
+            // Group the offset histogram into alignment clusters
+            List<AlignmentClusters.Cluster> clusters =
+                    AlignmentClusters.cluster(candidates, c, maxClusterSpread, frameMs);
 
             // Calculate alignment scores
             int bestClusterScore = 0;
@@ -279,14 +448,14 @@ public class MatchController {
                 clusters.sort((c1, c2) -> Double.compare(c2.getQualityScore(), c1.getQualityScore()));
 
                 // Primary cluster
-                AlignmentCluster primaryCluster = clusters.get(0);
+                AlignmentClusters.Cluster primaryCluster = clusters.get(0);
                 bestClusterScore = primaryCluster.getTotalMatches();
                 totalQualityScore = primaryCluster.getQualityScore();
                 totalAlignedMatches = bestClusterScore;
 
                 // Add secondary clusters with diminishing returns
                 for (int i = 1; i < Math.min(clusters.size(), 3); i++) {
-                    AlignmentCluster secondaryCluster = clusters.get(i);
+                    AlignmentClusters.Cluster secondaryCluster = clusters.get(i);
                     if (secondaryCluster.getTotalMatches() >= MIN_CLUSTER_SIZE) {
                         double weight = 1.0 / (i + 1);
                         totalAlignedMatches += (int)(secondaryCluster.getTotalMatches() * weight);
@@ -303,14 +472,14 @@ public class MatchController {
 
             // Quality score based on cluster tightness and consistency
             double avgTightness = clusters.isEmpty() ? 0 :
-                    clusters.stream().mapToDouble(AlignmentCluster::getTightness).average().orElse(0);
+                    clusters.stream().mapToDouble(AlignmentClusters.Cluster::getTightness).average().orElse(0);
             double qualityScore = (totalQualityScore / Math.max(1, clusters.size())) * avgTightness;
 
             // Density score - how many of our query fingerprints matched
-            double densityScore = (double) totalAlignedMatches / clipFingerprints.size();
+            double densityScore = (double) totalAlignedMatches / consumed;
 
             // Uniqueness score - prefer songs with fewer total matches (less common fingerprints)
-            double avgMatchesPerFingerprint = (double) songTotalMatches.getOrDefault(songId, 0) / Math.max(1, totalAlignedMatches);
+            double avgMatchesPerFingerprint = (double) songMatches / Math.max(1, totalAlignedMatches);
             double uniquenessScore = Math.max(0.1, 1.0 / Math.log(avgMatchesPerFingerprint + 1));
 
             // Combined final score with multiple factors
@@ -324,44 +493,58 @@ public class MatchController {
             qualityScores.put(songId, qualityScore);
             finalScores.put(songId, finalScore);
 
-            // Add analysis data
-            Song song = songCache.get(songId);
-            if (song != null) {
-                Map<String, Object> analysis = new HashMap<>();
-                analysis.put("songId", songId);
-                analysis.put("title", song.getTitle());
-                analysis.put("artist", song.getArtist());
-                analysis.put("totalMatches", songTotalMatches.getOrDefault(songId, 0));
-                analysis.put("alignedMatches", totalAlignedMatches);
-                analysis.put("normalizedScore", normalizedScore);
-                analysis.put("qualityScore", qualityScore);
-                analysis.put("densityScore", densityScore);
-                analysis.put("uniquenessScore", uniquenessScore);
-                analysis.put("finalScore", finalScore);
-                analysis.put("totalFingerprints", songTotalFingerprints);
-                analysis.put("clusters", clusters.size());
-                analysis.put("avgTightness", avgTightness);
-                analysis.put("primaryClusterSize", clusters.isEmpty() ? 0 : clusters.get(0).getTotalMatches());
-                analysis.put("avgMatchesPerFingerprint", avgMatchesPerFingerprint);
-                result.songAnalysis.add(analysis);
-
-                if (DEBUG_MODE) {
-                    System.out.println(String.format("🔹 %s - %s [ID:%d]: %d aligned (%d total, %d clusters) | " +
-                                    "Norm: %.6f | Quality: %.2f | Density: %.4f | Unique: %.3f | Final: %.2f",
-                            song.getTitle(), song.getArtist(), songId, totalAlignedMatches,
-                            songTotalMatches.getOrDefault(songId, 0), clusters.size(),
-                            normalizedScore, qualityScore, densityScore, uniquenessScore, finalScore));
-                }
-            }
+            // Add analysis data (title and artist are filled in for the reported candidates only)
+            Map<String, Object> analysis = new HashMap<>();
+            analysis.put("songId", songId);
+            analysis.put("totalMatches", songMatches);
+            analysis.put("alignedMatches", totalAlignedMatches);
+            analysis.put("normalizedScore", normalizedScore);
+            analysis.put("qualityScore", qualityScore);
+            analysis.put("densityScore", densityScore);
+            analysis.put("uniquenessScore", uniquenessScore);
+            analysis.put("finalScore", finalScore);
+            analysis.put("totalFingerprints", songTotalFingerprints);
+            analysis.put("clusters", clusters.size());
+            analysis.put("avgTightness", avgTightness);
+            analysis.put("primaryClusterSize", clusters.isEmpty() ? 0 : clusters.get(0).getTotalMatches());
+            analysis.put("avgMatchesPerFingerprint", avgMatchesPerFingerprint);
+            songAnalysis.put(songId, analysis);
         }
 
         // Find best match using final scores
-        result.totalMatches = songTotalMatches.values().stream().mapToInt(Integer::intValue).sum();
+        result.totalMatches = (int) votes.getTotalVotes();
 
         List<Map.Entry<Long, Double>> sortedSongsByFinalScore = finalScores.entrySet().stream()
                 .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
                 .collect(Collectors.toList());
 
+        // Resolve song metadata for the top candidates only, after scoring
+        List<Long> reportedSongIds = sortedSongsByFinalScore.stream()
+                .limit(MAX_REPORTED_CANDIDATES)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        Map<Long, Song> reportedSongs = songService.findByIds(reportedSongIds);
+
+        for (Long songId : reportedSongIds) {
+            Song song = reportedSongs.get(songId);
+            if (song == null) {
+                continue;
+            }
+            Map<String, Object> analysis = songAnalysis.get(songId);
+            analysis.put("title", song.getTitle());
+            analysis.put("artist", song.getArtist());
+            result.songAnalysis.add(analysis);
+
+            if (DEBUG_MODE) {
+                System.out.println(String.format("🔹 %s - %s [ID:%d]: %d aligned (%d total, %d clusters) | " +
+                                "Norm: %.6f | Quality: %.2f | Density: %.4f | Unique: %.3f | Final: %.2f",
+                        song.getTitle(), song.getArtist(), songId, analysis.get("alignedMatches"),
+                        analysis.get("totalMatches"), analysis.get("clusters"),
+                        analysis.get("normalizedScore"), analysis.get("qualityScore"),
+                        analysis.get("densityScore"), analysis.get("uniquenessScore"), analysis.get("finalScore")));
+            }
+        }
+
         if (!sortedSongsByFinalScore.isEmpty()) {
             Long bestSongId = sortedSongsByFinalScore.get(0).getKey();
             result.confidenceScore = sortedSongsByFinalScore.get(0).getValue();
@@ -375,8 +558,7 @@ public class MatchController {
                 result.secondBestNormalizedScore = normalizedScores.get(sortedSongsByFinalScore.get(1).getKey());
             }
 
-            result.matchRatio = clipFingerprints.size() > 0 ?
-                    (double) result.bestScore / clipFingerprints.size() : 0;
+            result.matchRatio = consumed > 0 ? (double) result.bestScore / consumed : 0;
 
             if (DEBUG_MODE) {
                 System.out.println("📊 Alignment scores - Best: " + result.bestScore + ", Second: " + result.secondBestScore);
@@ -396,7 +578,7 @@ public class MatchController {
                     result.matchRatio >= MIN_MATCH_RATIO;
 
             if (hasConfidence) {
-                result.bestSong = songCache.get(bestSongId);
+                result.bestSong = reportedSongs.get(bestSongId);
             } else {
                 // Add reasons for rejection
                 if (result.bestScore < MIN_CONFIDENCE_SCORE) {
@@ -422,68 +604,53 @@ public class MatchController {
         return result;
     }
 
-    private List<AlignmentCluster> createImprovedTimeClusters(Map<Integer, Integer> offsetCounts) {
-        List<Map.Entry<Integer, Integer>> sortedOffsets = offsetCounts.entrySet().stream()
-                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed())
-                .collect(Collectors.toList());
-
-        List<AlignmentCluster> clusters = new ArrayList<>();
+    /**
+     * True once the leading song's strongest alignment clears MIN_CONFIDENCE_SCORE and beats the
+     * runner-up by RELATIVE_STRENGTH_FACTOR, both with EARLY_STOP_MARGIN to spare.
+     * Uses single-delta peaks as a cheap stand-in for the clustered scores; the margin covers the gap.
+     */
+    private boolean hasClearLeader(VoteTable votes) {
+        int[] peaks = votes.topPeaks();
+        return peaks[0] >= MIN_CONFIDENCE_SCORE * EARLY_STOP_MARGIN &&
+                peaks[0] >= peaks[1] * RELATIVE_STRENGTH_FACTOR * EARLY_STOP_MARGIN;
+    }
 
-        for (Map.Entry<Integer, Integer> offset : sortedOffsets) {
-            boolean addedToCluster = false;
+    /**
+     * Look up clip fingerprints [from, to) in one batch and add their offset votes.
+     * Only songs stored under the same hash version take votes; deltaScale converts its offsets to current frames.
+     * Each song's version is resolved once per request, then read from the lookup's primitive cache.
+     */
+    private int collectVotes(FingerprintBuffer clipFingerprints, int from, int to, LegacyHashVersions.Lookup legacyVersions,
+                             int hashVersion, double deltaScale, VoteTable votes) {
+        // Look up every clip hash in one batch
+        FingerprintMatches matches = songService.getMatchingFingerprints(clipFingerprints.hashes(from, to));
 
-            // Try to add to existing cluster
-            for (AlignmentCluster cluster : clusters) {
-                if (cluster.canAccept(offset.getKey(), MAX_ALIGNMENT_CLUSTER_SIZE)) {
-                    cluster.addOffset(offset.getKey(), offset.getValue());
-                    addedToCluster = true;
-                    break;
-                }
-            }
+        int totalMatches = 0;
 
-            // Create new cluster if needed
-            if (!addedToCluster) {
-                AlignmentCluster newCluster = new AlignmentCluster();
-                newCluster.addOffset(offset.getKey(), offset.getValue());
-                clusters.add(newCluster);
+        // Collect matches for each fingerprint
+        for (int i = from; i < to; i++) {
+            int hashIndex = matches.indexOf(clipFingerprints.hash(i));
+            if (hashIndex < 0) {
+                continue;
             }
-        }
-
-        return clusters;
-    }
+            int offsetInClip = clipFingerprints.offset(i);
 
-    // Improved cluster class
-    private static class AlignmentCluster {
-        private List<Map.Entry<Integer, Integer>> offsets = new ArrayList<>();
-        private int totalMatches = 0;
-        private int minOffset = Integer.MAX_VALUE;
-        private int maxOffset = Integer.MIN_VALUE;
-
-        public void addOffset(int offset, int count) {
-            offsets.add(new AbstractMap.SimpleEntry<>(offset, count));
-            totalMatches += count;
-            minOffset = Math.min(minOffset, offset);
-            maxOffset = Math.max(maxOffset, offset);
-        }
-
-        public boolean canAccept(int offset, int maxSpread) {
-            if (offsets.isEmpty()) return true;
-            int newMin = Math.min(minOffset, offset);
-            int newMax = Math.max(maxOffset, offset);
-            return (newMax - newMin) <= maxSpread;
-        }
-
-        public int getTotalMatches() { return totalMatches; }
+            for (int p = matches.start(hashIndex); p < matches.end(hashIndex); p++) {
+                int songId = matches.songId(p);
+                if (legacyVersions.versionOf(songId) != hashVersion) {
+                    continue;
+                }
+                int delta = matches.offset(p) - offsetInClip;
+                if (deltaScale != 1.0) {
+                    delta = (int) Math.round(delta * deltaScale);
+                }
+                totalMatches++;
 
-        public double getTightness() {
-            if (offsets.size() <= 1) return 1.0;
-            int spread = maxOffset - minOffset;
-            return Math.max(0.1, 1.0 - (double)spread / 2000.0); // Increased tolerance
+                votes.vote(songId, delta);
+            }
         }
 
-        public double getQualityScore() {
-            return totalMatches * getTightness();
-        }
+        return totalMatches;
     }
 
     // Enhanced helper class for match results
@@ -498,10 +665,123 @@ public class MatchController {
         double confidenceScore;
         double secondBestConfidenceScore;
         double qualityScore; // New field
+        int hashesConsumed;
+        boolean earlyTerminated;
         List<Map<String, Object>> songAnalysis = new ArrayList<>();
         List<String> confidenceReasons = new ArrayList<>();
     }
 
+    /**
+     * Votes of a clip that is still streaming in. Each evaluation looks up the fingerprints of every
+     * hash version emitted since the last one, then scores the candidates once a song clearly leads.
+     */
+    private class LiveMatch {
+        private final MatchExecutor.Session session;
+        private final int[] legacyHashVersions;
+        private final LegacyHashVersions.Lookup legacyVersions;
+        private final int[] legacyConsumed;
+        private final VoteTable votes = new VoteTable(MATCH_BATCH_SIZE * 16);
+        private int consumed = 0;
+        private double frameMs;
+        private MatchResult matched;
+
+        LiveMatch(MatchExecutor.Session session, int[] legacyHashVersions, LegacyHashVersions.Lookup legacyVersions) {
+            this.session = session;
+            this.legacyHashVersions = legacyHashVersions;
+            this.legacyVersions = legacyVersions;
+            this.legacyConsumed = new int[legacyHashVersions.length];
+        }
+
+        /**
+         * Returns false once a confident match was found, which stops reading the upload.
+         * Called on the request thread; full batches are evaluated on the match executor.
+         */
+        boolean onChunk(FingerprintService.FingerprintResult progress) {
+            if (progress.getFingerprints().size() - consumed < MATCH_BATCH_SIZE) {
+                return true;
+            }
+            return onExecutor(() -> evaluate(progress));
+        }
+
+        /**
+         * Score everything that was read, for uploads that ended without an early match
+         */
+        MatchResult finish(FingerprintService.FingerprintResult result) {
+            return onExecutor(() -> {
+                collect(result);
+                return score(false);
+            });
+        }
+
+        private boolean evaluate(FingerprintService.FingerprintResult progress) {
+            collect(progress);
+            if (!hasClearLeader(votes)) {
+                return true;
+            }
+            MatchResult result = score(true);
+            if (result.bestSong == null) {
+                return true;
+            }
+            matched = result;
+            return false;
+        }
+
+        /**
+         * Run a batch in the request's executor session, within the deadline of the whole request.
+         * The request thread waits and does not touch the votes meanwhile, so batches never overlap.
+         * Shedding exceptions pass through and end the upload.
+         */
+        private <T> T onExecutor(Callable<T> batch) {
+            try {
+                return session.run(batch);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void collect(FingerprintService.FingerprintResult progress) {
+            float sampleRate = progress.getAudioInfo().getSampleRate();
+            frameMs = FingerprintService.offsetUnitMs(FingerprintService.CURRENT_HASH_VERSION, sampleRate);
+
+            FingerprintBuffer fingerprints = progress.getFingerprints();
+            int size = fingerprints.size();
+            collectVotes(fingerprints, consumed, size, legacyVersions, FingerprintService.CURRENT_HASH_VERSION, 1.0, votes);
+            consumed = size;
+
+            for (int v = 0; v < legacyHashVersions.length; v++) {
+                FingerprintBuffer legacy = progress.getFingerprints(legacyHashVersions[v]);
+                int legacySize = legacy.size();
+                double deltaScale = FingerprintService.offsetUnitMs(legacyHashVersions[v], sampleRate) / frameMs;
+                collectVotes(legacy, legacyConsumed[v], legacySize, legacyVersions, legacyHashVersions[v], deltaScale, votes);
+                legacyConsumed[v] = legacySize;
+            }
+        }
+
+        private MatchResult score(boolean earlyTerminated) {
+            MatchResult result = new MatchResult();
+            result.hashesConsumed = consumed;
+            result.earlyTerminated = earlyTerminated;
+            if (consumed == 0) {
+                result.confidenceReasons.add("No fingerprints generated from audio");
+                return result;
+            }
+            return scoreVotes(votes, consumed, frameMs, result);
+        }
+    }
+
+    /**
+     * Match executor load: queue depth, queue wait times and shed requests
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> matchStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("matchExecutor", matchExecutor.getStats());
+        return response;
+    }
+
     @PostMapping("/test")
     public Map<String, Object> testEndpoint() {
         Map<String, Object> response = new HashMap<>();
@@ -524,6 +804,9 @@ public class MatchController {
             response.put("totalSongs", totalSongs);
             response.put("totalFingerprints", totalFingerprints);
             response.put("recentSongs", recentSongs);
+            response.put("fingerprintIndex", fingerprintIndex.getStats());
+            response.put("hashStopList", hashStopList.getStats());
+            response.put("legacyHashVersions", legacySongVersions.getStats());
 
             // Test a few fingerprint lookups
             if (totalFingerprints > 0) {
@@ -1,10 +1,17 @@
 package com.eashan.shazam_api.controller;
 
+import com.eashan.shazam_api.exceptions.MatchRejectedException;
+import com.eashan.shazam_api.exceptions.MatchTimeoutException;
 import com.eashan.shazam_api.model.Song;
+import com.eashan.shazam_api.service.FingerprintIndex;
+import com.eashan.shazam_api.service.FingerprintMigrationService;
+import com.eashan.shazam_api.service.LegacyHashVersions;
+import com.eashan.shazam_api.service.SongService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.util.HashMap;
 import java.util.List;
@@ -18,6 +25,18 @@ public class SongManagementController {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private FingerprintIndex fingerprintIndex;
+
+    @Autowired
+    private FingerprintMigrationService fingerprintMigrationService;
+
+    @Autowired
+    private SongService songService;
+
+    @Autowired
+    private LegacyHashVersions legacyHashVersions;
+
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
     public Map<String, Object> getAllSongs() {
@@ -57,6 +76,9 @@ public class SongManagementController {
 
             // Delete song
             int rowsAffected = jdbcTemplate.update("DELETE FROM songs WHERE id = ?", id);
+            fingerprintIndex.removeSong(id);
+            legacyHashVersions.songDeleted(id);
+            songService.evictSong((long) id);
 
             if (rowsAffected > 0) {
                 response.put("status", "success");
@@ -72,4 +94,49 @@ public class SongManagementController {
 
         return response;
     }
-}
\ No newline at end of file
+
+    @PostMapping("/{id}/rehash")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Map<String, Object> rehashSong(@PathVariable int id, @RequestParam("file") MultipartFile file) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            int fingerprints = fingerprintMigrationService.rehashSong(id, file);
+            response.put("status", "success");
+            response.put("message", "Song re-hashed");
+            response.put("fingerprints", fingerprints);
+        } catch (MatchRejectedException | MatchTimeoutException e) {
+            // Shed like a match request (429 / 503)
+            throw e;
+        } catch (Exception e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+        }
+
+        return response;
+    }
+
+    @PostMapping("/rehash")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Map<String, Object> startRehashJob() {
+        Map<String, Object> response = new HashMap<>();
+
+        if (fingerprintMigrationService.startRehashJob()) {
+            response.put("status", "success");
+            response.put("message", "Re-hash job started");
+        } else {
+            response.put("status", "error");
+            response.put("message", "Re-hash job already running");
+        }
+
+        return response;
+    }
+
+    @GetMapping("/rehash")
+    @PreAuthorize("hasRole('ADMIN')")
+    public Map<String, Object> getRehashStatus() {
+        Map<String, Object> response = new HashMap<>(fingerprintMigrationService.getStatus());
+        response.put("status", "success");
+        return response;
+    }
+}
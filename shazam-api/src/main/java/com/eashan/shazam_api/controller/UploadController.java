@@ -1,7 +1,15 @@
 package com.eashan.shazam_api.controller;
 
+import com.eashan.shazam_api.exceptions.MatchRejectedException;
+import com.eashan.shazam_api.exceptions.MatchTimeoutException;
 import com.eashan.shazam_api.service.AudioProcessor;
+import com.eashan.shazam_api.service.FingerprintBuffer;
+import com.eashan.shazam_api.service.FingerprintIndex;
 import com.eashan.shazam_api.service.FingerprintService;
+import com.eashan.shazam_api.service.HashStopList;
+import com.eashan.shazam_api.service.LegacyHashVersions;
+import com.eashan.shazam_api.service.MatchExecutor;
+import com.eashan.shazam_api.service.SongService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -12,8 +20,6 @@ import org.springframework.web.multipart.MultipartFile;
 import javax.sound.sampled.*;
 import java.io.*;
 import java.nio.file.*;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.util.*;
 
 @EnableMethodSecurity
@@ -27,10 +33,22 @@ public class UploadController {
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private AudioProcessor audioProcessor;
+    private FingerprintService fingerprintService;
 
     @Autowired
-    private FingerprintService fingerprintService;
+    private FingerprintIndex fingerprintIndex;
+
+    @Autowired
+    private HashStopList hashStopList;
+
+    @Autowired
+    private SongService songService;
+
+    @Autowired
+    private MatchExecutor matchExecutor;
+
+    @Autowired
+    private LegacyHashVersions legacyHashVersions;
 
     @PostMapping
     @PreAuthorize("hasRole('ADMIN')")
@@ -62,11 +80,13 @@ public class UploadController {
                 Files.copy(coverImage.getInputStream(), coverPath, StandardCopyOption.REPLACE_EXISTING);
             }
 
-            // Convert audio to samples
-            AudioProcessor.AudioData audioData = audioProcessor.processAudioStream(file.getInputStream());
+            // Decode and fingerprint the audio as a stream, on the platform-thread fingerprint pool
+            FingerprintService.FingerprintResult fingerprintResult =
+                    matchExecutor.runIngest(() -> fingerprintService.fingerprintTrack(file));
+            AudioProcessor.AudioInfo audioInfo = fingerprintResult.getAudioInfo();
 
-            System.out.println("✅ Audio processed: " + audioData.getSamples().length + " samples");
-            System.out.println("⏱️ Duration: " + String.format("%.2f", audioData.getDurationSeconds()) + " seconds");
+            System.out.println("✅ Audio processed: " + audioInfo.getSampleCount() + " samples");
+            System.out.println("⏱️ Duration: " + String.format("%.2f", audioInfo.getDurationSeconds()) + " seconds");
 
 //            AudioInputStream audioInputStream = null;
             try {
@@ -119,44 +139,25 @@ public class UploadController {
 //                    samples[sampleIndex] = (sampleSum / channels) / 32768.0;
 //                }
 
-                List<int[]> fingerprints = fingerprintService.generateFingerprint(audioData.getSamples(),
-                        audioData.getSampleRate());
+                FingerprintBuffer fingerprints = hashStopList.filterForStorage(fingerprintResult.getFingerprints());
 
                 // Insert song
-                String insertSongSql = "INSERT INTO songs (title, artist, album, cover_path) VALUES (?, ?, ?, ?)";
-                jdbcTemplate.update(insertSongSql, title, artist, album, coverFilename);
+                String insertSongSql = "INSERT INTO songs (title, artist, album, cover_path, hash_version) VALUES (?, ?, ?, ?, ?)";
+                jdbcTemplate.update(insertSongSql, title, artist, album, coverFilename, FingerprintService.CURRENT_HASH_VERSION);
                 Integer songId = jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()", Integer.class);
+                songService.evictSong((long) songId);
+
+                // Bulk load fingerprints into database
+                songService.saveFingerprints(songId, fingerprints);
 
-                // Write fingerprints to CSV and load into database
-                Path tempCsv = Paths.get("./temp_fingerprints_" + UUID.randomUUID() + ".csv");
-                try (BufferedWriter writer = Files.newBufferedWriter(tempCsv)) {
-                    for (int[] fp : fingerprints) {
-                        writer.write(songId + "," + fp[0] + "," + fp[1]);
-                        writer.newLine();
-                    }
-                }
-
-                // Load CSV into MySQL
-                String loadSql = "LOAD DATA LOCAL INFILE ? INTO TABLE fingerprints " +
-                        "FIELDS TERMINATED BY ',' " +
-                        "LINES TERMINATED BY '\\n' " +
-                        "(song_id, hash, offset)";
-
-                jdbcTemplate.execute((Connection conn) -> {
-                    try (PreparedStatement ps = conn.prepareStatement(loadSql)) {
-                        ps.setString(1, tempCsv.toAbsolutePath().toString());
-                        ps.execute();
-                    }
-                    return null;
-                });
-
-                // Delete temp CSV
-                Files.deleteIfExists(tempCsv);
+                // Make the new song matchable without reloading the index
+                fingerprintIndex.addSong(songId, fingerprints);
+                legacyHashVersions.songStored(songId, FingerprintService.CURRENT_HASH_VERSION);
 
                 response.put("status", "success");
                 response.put("message", "Song uploaded and fingerprints saved.");
                 response.put("fingerprints", fingerprints.size());
-                response.put("format", audioData.getSampleRate());
+                response.put("format", audioInfo.getSampleRate());
 
             }
             catch (Exception e){
@@ -168,6 +169,9 @@ public class UploadController {
 //                }
 //            }
 
+        } catch (MatchRejectedException | MatchTimeoutException e) {
+            // Shed like a match request (429 / 503)
+            throw e;
         } catch (UnsupportedAudioFileException e) {
             response.put("status", "error");
             response.put("message", "Unsupported audio format. Please use WAV or MP3 files.");
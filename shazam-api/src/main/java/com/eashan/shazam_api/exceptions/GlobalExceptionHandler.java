@@ -1,6 +1,7 @@
 package com.eashan.shazam_api.exceptions;
 
 import com.eashan.shazam_api.exceptions.EmailAlreadyExistsException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -20,6 +21,24 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(MatchRejectedException.class)
+    public ResponseEntity<Map<String, String>> handleMatchRejectedException(MatchRejectedException ex) {
+        return matchUnavailable(ex.getMessage(), HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    @ExceptionHandler(MatchTimeoutException.class)
+    public ResponseEntity<Map<String, String>> handleMatchTimeoutException(MatchTimeoutException ex) {
+        return matchUnavailable(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    // Same shape as the match endpoints' own error responses, with a hint to retry shortly
+    private ResponseEntity<Map<String, String>> matchUnavailable(String message, HttpStatus status) {
+        Map<String, String> error = new HashMap<>();
+        error.put("status", "error");
+        error.put("message", message);
+        return ResponseEntity.status(status).header(HttpHeaders.RETRY_AFTER, "2").body(error);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, String>> handleGenericException(Exception ex) {
         Map<String, String> error = new HashMap<>();
@@ -0,0 +1,10 @@
+package com.eashan.shazam_api.exceptions;
+
+/**
+ * A match request was turned away because the match queue is full (HTTP 429)
+ */
+public class MatchRejectedException extends RuntimeException {
+    public MatchRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package com.eashan.shazam_api.exceptions;
+
+/**
+ * A match request missed its deadline, waiting in the queue or while running (HTTP 503)
+ */
+public class MatchTimeoutException extends RuntimeException {
+    public MatchTimeoutException(String message) {
+        super(message);
+    }
+}
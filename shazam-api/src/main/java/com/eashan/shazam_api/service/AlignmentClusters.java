@@ -0,0 +1,108 @@
+package com.eashan.shazam_api.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Groups a candidate song's offset-delta histogram into alignment clusters.
+ * Deltas are taken strongest first, and each joins the earliest cluster it fits in without the cluster
+ * spanning more than maxSpread, or starts a new one. A cluster that can take a delta lies entirely within
+ * maxSpread of it, so only the clusters of its neighbours in the delta-sorted entries are checked.
+ * Deltas are in whatever unit the votes were counted in; unitMs converts a spread to milliseconds for tightness.
+ */
+public final class AlignmentClusters {
+
+    private AlignmentClusters() {
+    }
+
+    public static List<Cluster> cluster(VoteTable.Candidates candidates, int candidate, int maxSpread) {
+        return cluster(candidates, candidate, maxSpread, 1.0);
+    }
+
+    public static List<Cluster> cluster(VoteTable.Candidates candidates, int candidate, int maxSpread, double unitMs) {
+        int start = candidates.start(candidate);
+        int length = candidates.end(candidate) - start;
+
+        // Entries by vote count descending; entries are delta-sorted, so ties keep the lower delta first
+        long[] order = new long[length];
+        for (int i = 0; i < length; i++) {
+            order[i] = ((long) candidates.count(start + i) << 32) | (length - 1 - i);
+        }
+        Arrays.sort(order);
+
+        // Cluster (creation index) of each entry, -1 while unassigned
+        int[] clusterOf = new int[length];
+        Arrays.fill(clusterOf, -1);
+        List<Cluster> clusters = new ArrayList<>();
+
+        for (int k = length - 1; k >= 0; k--) {
+            int entry = length - 1 - (int) order[k];
+            int delta = candidates.delta(start + entry);
+
+            int target = -1;
+            for (int i = entry - 1; i >= 0 && delta - candidates.delta(start + i) <= maxSpread; i--) {
+                target = earliestAccepting(target, clusterOf[i], clusters, delta, maxSpread);
+            }
+            for (int i = entry + 1; i < length && candidates.delta(start + i) - delta <= maxSpread; i++) {
+                target = earliestAccepting(target, clusterOf[i], clusters, delta, maxSpread);
+            }
+            if (target < 0) {
+                target = clusters.size();
+                clusters.add(new Cluster(unitMs));
+            }
+            clusters.get(target).addOffset(delta, candidates.count(start + entry));
+            clusterOf[entry] = target;
+        }
+
+        return clusters;
+    }
+
+    private static int earliestAccepting(int current, int cluster, List<Cluster> clusters, int delta, int maxSpread) {
+        if (cluster < 0 || (current >= 0 && current <= cluster) || !clusters.get(cluster).canAccept(delta, maxSpread)) {
+            return current;
+        }
+        return cluster;
+    }
+
+    public static class Cluster {
+        private final double unitMs;
+        private int offsetCount = 0;
+        private int totalMatches = 0;
+        private int minOffset = Integer.MAX_VALUE;
+        private int maxOffset = Integer.MIN_VALUE;
+
+        Cluster(double unitMs) {
+            this.unitMs = unitMs;
+        }
+
+        void addOffset(int offset, int count) {
+            offsetCount++;
+            totalMatches += count;
+            minOffset = Math.min(minOffset, offset);
+            maxOffset = Math.max(maxOffset, offset);
+        }
+
+        boolean canAccept(int offset, int maxSpread) {
+            if (offsetCount == 0) return true;
+            int newMin = Math.min(minOffset, offset);
+            int newMax = Math.max(maxOffset, offset);
+            return (newMax - newMin) <= maxSpread;
+        }
+
+        public int getOffsetCount() { return offsetCount; }
+        public int getTotalMatches() { return totalMatches; }
+        public int getMinOffset() { return minOffset; }
+        public int getMaxOffset() { return maxOffset; }
+
+        public double getTightness() {
+            if (offsetCount <= 1) return 1.0;
+            double spreadMs = (maxOffset - minOffset) * unitMs;
+            return Math.max(0.1, 1.0 - spreadMs / 2000.0); // Increased tolerance
+        }
+
+        public double getQualityScore() {
+            return totalMatches * getTightness();
+        }
+    }
+}
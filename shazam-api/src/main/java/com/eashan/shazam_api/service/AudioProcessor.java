@@ -4,15 +4,48 @@ import org.springframework.stereotype.Service;
 import javax.sound.sampled.*;
 import java.io.BufferedInputStream;
 import java.io.InputStream;
+import java.util.Arrays;
 
 @Service
 public class AudioProcessor {
 
+    // Frames decoded per chunk when streaming
+    private static final int CHUNK_FRAMES = 8192;
+
+    /**
+     * Receives decoded mono samples chunk by chunk. The samples array is reused between calls.
+     */
+    public interface SampleSink {
+        default void start(float sampleRate, int channels) {}
+
+        void accept(double[] samples, int count);
+
+        /**
+         * Called once after the last chunk
+         */
+        default void end() {}
+
+        /**
+         * Checked before each chunk is read; true stops decoding early
+         */
+        default boolean isDone() { return false; }
+    }
+
     /**
      * Unified audio processing method for both upload and matching
      * This ensures identical fingerprint generation
      */
     public AudioData processAudioStream(InputStream inputStream) throws Exception {
+        SampleCollector collector = new SampleCollector();
+        AudioInfo info = streamAudio(inputStream, collector);
+        return new AudioData(collector.toArray(), info.getSampleRate(), info.getChannels());
+    }
+
+    /**
+     * Decode audio to 16-bit PCM and push normalized mono samples to the sink in fixed-size chunks,
+     * so memory stays bounded regardless of track length.
+     */
+    public AudioInfo streamAudio(InputStream inputStream, SampleSink sink) throws Exception {
         AudioInputStream audioInputStream = null;
 
         try {
@@ -38,14 +71,35 @@ public class AudioProcessor {
             System.out.println("🔄 Converting to standardized format: " + targetFormat);
             audioInputStream = AudioSystem.getAudioInputStream(targetFormat, audioInputStream);
 
-            // Read all bytes
-            byte[] audioBytes = audioInputStream.readAllBytes();
-            System.out.println("📊 Read " + audioBytes.length + " bytes");
+            int frameSize = targetFormat.getFrameSize();
+            byte[] buffer = new byte[CHUNK_FRAMES * frameSize];
+            double[] samples = new double[CHUNK_FRAMES];
 
-            // Convert to normalized samples
-            double[] samples = convertBytesToNormalizedSamples(audioBytes, targetFormat);
+            sink.start(targetFormat.getSampleRate(), targetFormat.getChannels());
 
-            return new AudioData(samples, targetFormat.getSampleRate(), targetFormat.getChannels());
+            long sampleCount = 0;
+            double min = 0, max = 0;
+            int bytesRead;
+            while (!sink.isDone() && (bytesRead = audioInputStream.readNBytes(buffer, 0, buffer.length)) > 0) {
+                // A cancelled job stops here instead of decoding and fingerprinting the rest
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Audio decoding cancelled");
+                }
+                int count = convertBytesToNormalizedSamples(buffer, bytesRead / frameSize, targetFormat, samples);
+                for (int i = 0; i < count; i++) {
+                    min = Math.min(min, samples[i]);
+                    max = Math.max(max, samples[i]);
+                }
+                sink.accept(samples, count);
+                sampleCount += count;
+            }
+            sink.end();
+
+            System.out.println("🔍 Sample range: [" + String.format("%.6f", min) + ", " + String.format("%.6f", max) + "]");
+            System.out.println("✅ Streamed " + sampleCount + " normalized samples");
+
+            return new AudioInfo(targetFormat.getSampleRate(), targetFormat.getChannels(), sampleCount,
+                    Math.max(Math.abs(min), Math.abs(max)));
 
         } finally {
             if (audioInputStream != null) {
@@ -55,19 +109,63 @@ public class AudioProcessor {
     }
 
     /**
-     * Convert audio bytes to normalized samples using consistent method
+     * Resampling stage: the returned sink converts whatever rate the decoder produces to
+     * targetRate before handing samples to the given sink (and reports targetRate in start)
+     */
+    public SampleSink resampling(SampleSink sink, float targetRate) {
+        return new Resampler(targetRate, sink);
+    }
+
+    /**
+     * Resample a clip that is already in memory
+     */
+    public static double[] resample(double[] samples, double sampleRate, float targetRate) {
+        SampleCollector collector = new SampleCollector();
+        Resampler resampler = new Resampler(targetRate, collector);
+        resampler.start((float) sampleRate, 1);
+        resampler.accept(samples, samples.length);
+        resampler.end();
+        return collector.toArray();
+    }
+
+    /**
+     * Sink that forwards every chunk to two sinks, to feed two pipelines from one decode
      */
-    private double[] convertBytesToNormalizedSamples(byte[] audioBytes, AudioFormat format) {
+    public static SampleSink tee(SampleSink first, SampleSink second) {
+        return new SampleSink() {
+            @Override
+            public void start(float sampleRate, int channels) {
+                first.start(sampleRate, channels);
+                second.start(sampleRate, channels);
+            }
+
+            @Override
+            public void accept(double[] samples, int count) {
+                first.accept(samples, count);
+                second.accept(samples, count);
+            }
+
+            @Override
+            public void end() {
+                first.end();
+                second.end();
+            }
+
+            @Override
+            public boolean isDone() {
+                return first.isDone() || second.isDone();
+            }
+        };
+    }
+
+    /**
+     * Convert a chunk of audio bytes to normalized mono samples using consistent method
+     */
+    private int convertBytesToNormalizedSamples(byte[] audioBytes, int numSamples, AudioFormat format, double[] samples) {
         int bytesPerSample = format.getSampleSizeInBits() / 8;
         int channels = format.getChannels();
         boolean isBigEndian = format.isBigEndian();
 
-        // Calculate number of samples (not frames)
-        int numSamples = audioBytes.length / (bytesPerSample * channels);
-        double[] samples = new double[numSamples];
-
-        System.out.println("🔄 Converting " + numSamples + " samples, " + channels + " channels, " + bytesPerSample + " bytes per sample");
-
         // Process each sample
         for (int i = 0; i < numSamples; i++) {
             int frameStart = i * bytesPerSample * channels;
@@ -94,17 +192,51 @@ public class AudioProcessor {
             samples[i] = monoSample / channels; // average across channels
         }
 
-        // Calculate and log stats
-        double min = Double.MAX_VALUE, max = Double.MIN_VALUE;
-        for (double sample : samples) {
-            min = Math.min(min, sample);
-            max = Math.max(max, sample);
+        return numSamples;
+    }
+
+    /**
+     * Sink that keeps every sample, for callers that need the whole clip in memory
+     */
+    private static class SampleCollector implements SampleSink {
+        private double[] samples = new double[CHUNK_FRAMES];
+        private int size = 0;
+
+        @Override
+        public void accept(double[] chunk, int count) {
+            if (size + count > samples.length) {
+                samples = Arrays.copyOf(samples, Math.max(size + count, samples.length * 2));
+            }
+            System.arraycopy(chunk, 0, samples, size, count);
+            size += count;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(samples, size);
         }
+    }
+
+    /**
+     * Format and statistics of a streamed audio source
+     */
+    public static class AudioInfo {
+        private final float sampleRate;
+        private final int channels;
+        private final long sampleCount;
+        private final double peakAmplitude;
 
-        System.out.println("🔍 Sample range: [" + String.format("%.6f", min) + ", " + String.format("%.6f", max) + "]");
-        System.out.println("✅ Generated " + samples.length + " normalized samples");
+        public AudioInfo(float sampleRate, int channels, long sampleCount, double peakAmplitude) {
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.sampleCount = sampleCount;
+            this.peakAmplitude = peakAmplitude;
+        }
 
-        return samples;
+        public float getSampleRate() { return sampleRate; }
+        public int getChannels() { return channels; }
+        public long getSampleCount() { return sampleCount; }
+        public double getPeakAmplitude() { return peakAmplitude; }
+        public double getDurationSeconds() { return (double) sampleCount / sampleRate; }
     }
 
     /**
@@ -0,0 +1,66 @@
+package com.eashan.shazam_api.service;
+
+import org.jtransforms.fft.DoubleFFT_1D;
+
+/**
+ * Reusable real-input FFT for one window size.
+ * Holds the JTransforms plan, a precomputed Hamming table and a scratch buffer,
+ * so transforming a frame allocates nothing. Not thread-safe: keep one per thread.
+ */
+class FftPlan {
+
+    private final int windowSize;
+    private final DoubleFFT_1D fft;
+    private final double[] hamming;
+    private final double[] scratch;
+
+    // Unitary normalization (1 / sqrt(n)), matching the commons-math transformer used before
+    private final double scale;
+
+    FftPlan(int windowSize) {
+        this.windowSize = windowSize;
+        this.fft = new DoubleFFT_1D(windowSize);
+        this.hamming = new double[windowSize];
+        this.scratch = new double[windowSize];
+        this.scale = 1.0 / Math.sqrt(windowSize);
+
+        for (int i = 0; i < windowSize; i++) {
+            hamming[i] = 0.54 - 0.46 * Math.cos(2 * Math.PI * i / (windowSize - 1));
+        }
+    }
+
+    /**
+     * Apply the Hamming window to samples[from, from + windowSize), transform it,
+     * and write the windowSize / 2 positive-frequency magnitudes into out.
+     */
+    void magnitudes(double[] samples, int from, double[] out) {
+        for (int i = 0; i < windowSize; i++) {
+            scratch[i] = samples[from + i] * hamming[i];
+        }
+
+        // Packed result: scratch[2k] = Re[k], scratch[2k + 1] = Im[k], scratch[1] = Re[n/2]
+        fft.realForward(scratch);
+
+        out[0] = Math.abs(scratch[0] * scale);
+        for (int k = 1; k < windowSize / 2; k++) {
+            out[k] = abs(scratch[2 * k] * scale, scratch[2 * k + 1] * scale);
+        }
+    }
+
+    // Same formulation as commons-math Complex.abs(), so peak selection sees the same values
+    private static double abs(double real, double imaginary) {
+        if (Math.abs(real) < Math.abs(imaginary)) {
+            if (imaginary == 0.0) {
+                return Math.abs(real);
+            }
+            double q = real / imaginary;
+            return Math.abs(imaginary) * Math.sqrt(1 + q * q);
+        } else {
+            if (real == 0.0) {
+                return Math.abs(imaginary);
+            }
+            double q = imaginary / real;
+            return Math.abs(real) * Math.sqrt(1 + q * q);
+        }
+    }
+}
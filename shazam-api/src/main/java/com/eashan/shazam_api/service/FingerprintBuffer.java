@@ -0,0 +1,89 @@
+package com.eashan.shazam_api.service;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of (hash, offset) fingerprints packed into a single long[].
+ * Replaces List<int[]> so a track's fingerprints are one array instead of an object per pair.
+ * Not thread-safe.
+ */
+public class FingerprintBuffer {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // hash in the high 32 bits, offset in the low 32 bits
+    private long[] data;
+    private int size = 0;
+
+    public FingerprintBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FingerprintBuffer(int capacity) {
+        this.data = new long[Math.max(1, capacity)];
+    }
+
+    public interface Consumer {
+        void accept(int hash, int offset);
+    }
+
+    public void add(int hash, int offset) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = ((long) hash << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public int hash(int i) {
+        checkIndex(i);
+        return (int) (data[i] >>> 32);
+    }
+
+    public int offset(int i) {
+        checkIndex(i);
+        return (int) data[i];
+    }
+
+    public void forEach(Consumer consumer) {
+        for (int i = 0; i < size; i++) {
+            consumer.accept((int) (data[i] >>> 32), (int) data[i]);
+        }
+    }
+
+    /**
+     * Copy of the hash column, in buffer order
+     */
+    public int[] hashes() {
+        return hashes(0, size);
+    }
+
+    /**
+     * Copy of the hashes in [from, to), in buffer order
+     */
+    public int[] hashes(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for size " + size);
+        }
+        int[] hashes = new int[to - from];
+        for (int i = from; i < to; i++) {
+            hashes[i - from] = (int) (data[i] >>> 32);
+        }
+        return hashes;
+    }
+
+    /**
+     * Sort in place by hash, then offset, so equal hashes are adjacent
+     */
+    public void sortByHash() {
+        Arrays.sort(data, 0, size);
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + size);
+        }
+    }
+}
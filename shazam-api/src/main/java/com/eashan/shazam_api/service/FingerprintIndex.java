@@ -0,0 +1,549 @@
+package com.eashan.shazam_api.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Resident inverted index over the fingerprints table.
+ * Loaded once at startup and kept in sync by uploads and deletes, so matching
+ * does not need a database round-trip per hash.
+ * Partitioned by hash range into IndexShards with their own tables and locks; batch lookups
+ * fan out to the shards in parallel.
+ * With fingerprint.index.dir set, every upload is written as a small memory-mapped segment file
+ * per shard and a background compactor merges segments, so a restart maps the files instead of
+ * rescanning the fingerprints table. The MANIFEST file lists the live segments of every shard and
+ * the songs deleted from each; it only exists while every segment is on disk.
+ */
+@Service
+public class FingerprintIndex {
+
+    // Below this many hashes a batch is looked up on the calling thread
+    private static final int PARALLEL_LOOKUP_MIN_HASHES = 256;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static final String MANIFEST = "MANIFEST";
+
+    @Value("${fingerprint.index.shards:8}")
+    private int configuredShards;
+
+    // Empty keeps segments in memory; the index is then rebuilt from the database on every start
+    @Value("${fingerprint.index.dir:}")
+    private String indexDir;
+
+    // Segments per shard before the compactor merges the newest ones
+    @Value("${fingerprint.index.max-segments:8}")
+    private int maxSegments;
+
+    private IndexShard[] shards;
+
+    // Guards pendingChanges and orders song updates against rebuild swaps
+    private final Object updateLock = new Object();
+
+    // Uploads and deletes seen while a rebuild is scanning the database, replayed on swap
+    private List<PendingChange> pendingChanges;
+
+    private volatile boolean ready = false;
+
+    // Serializes compactions
+    private final Object compactLock = new Object();
+
+    private final AtomicLong segmentSequence = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    @PostConstruct
+    public void init() {
+        int shardCount = Math.max(1, configuredShards);
+        shards = new IndexShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new IndexShard(i);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Thread loader = new Thread(() -> {
+            if (!openSnapshot()) {
+                rebuild();
+            }
+        }, "fingerprint-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Map the segment files listed in the manifest. Returns false (and serves nothing) if there is no
+     * usable manifest or it does not add up to the fingerprint counts in the database.
+     */
+    private boolean openSnapshot() {
+        if (!snapshotsEnabled()) {
+            return false;
+        }
+        Path dir = Paths.get(indexDir);
+        Path manifestPath = dir.resolve(MANIFEST);
+        if (!Files.exists(manifestPath)) {
+            return false;
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<List<MappedIndexFile>> files = new ArrayList<>();
+        List<List<Set<Integer>>> deleted = new ArrayList<>();
+        long totalPostings = 0;
+        int segmentCount = 0;
+        try {
+            Properties manifest = new Properties();
+            try (InputStream in = Files.newInputStream(manifestPath)) {
+                manifest.load(in);
+            }
+            if (Integer.parseInt(manifest.getProperty("format", "0")) != IndexFile.VERSION
+                    || Integer.parseInt(manifest.getProperty("shards", "0")) != shards.length) {
+                System.out.println("⚠️ Fingerprint index snapshot has a different format or shard count, rebuilding");
+                return false;
+            }
+
+            for (int i = 0; i < shards.length; i++) {
+                List<MappedIndexFile> shardFiles = new ArrayList<>();
+                List<Set<Integer>> shardDeleted = new ArrayList<>();
+                for (String name : splitList(manifest.getProperty("shard." + i, ""))) {
+                    MappedIndexFile file = MappedIndexFile.open(dir.resolve(name));
+                    Set<Integer> songIds = new HashSet<>();
+                    for (String songId : splitList(manifest.getProperty("deleted." + name, ""))) {
+                        songIds.add(Integer.parseInt(songId));
+                    }
+                    totalPostings += file.getTotalPostings();
+                    for (int songId : songIds) {
+                        totalPostings -= file.getSongPostings(songId);
+                    }
+                    shardFiles.add(file);
+                    shardDeleted.add(songIds);
+                }
+                files.add(shardFiles);
+                deleted.add(shardDeleted);
+                segmentCount += shardFiles.size();
+            }
+
+            // Cheap guard against rows written or deleted behind the index's back
+            Long stored = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(fingerprint_count), 0) FROM songs", Long.class);
+            if (stored == null || stored != totalPostings) {
+                System.out.println("⚠️ Fingerprint index snapshot is stale (" + totalPostings + " postings, database has " +
+                        stored + "), rebuilding");
+                return false;
+            }
+        } catch (Exception e) {
+            System.err.println("Error opening fingerprint index snapshot: " + e.getMessage());
+            return false;
+        }
+
+        synchronized (updateLock) {
+            for (int i = 0; i < shards.length; i++) {
+                shards[i].open(files.get(i), deleted.get(i));
+            }
+            ready = true;
+        }
+
+        System.out.println("✅ Fingerprint index mapped: " + totalPostings + " postings in " + segmentCount +
+                " segments across " + shards.length + " shards in " + (System.currentTimeMillis() - startTime) + " ms");
+        return true;
+    }
+
+    /**
+     * Merge segments where the tiering policy asks for it and drop the postings of deleted songs.
+     * Also writes in-memory segments (a fresh rebuild) to disk. Lookups and uploads continue meanwhile.
+     */
+    @Scheduled(initialDelayString = "${fingerprint.index.compact-ms:60000}",
+            fixedDelayString = "${fingerprint.index.compact-ms:60000}")
+    public void compact() {
+        if (!ready) {
+            return;
+        }
+
+        synchronized (compactLock) {
+            long startTime = System.currentTimeMillis();
+            boolean persist = snapshotsEnabled();
+            List<Path> replaced = new ArrayList<>();
+            int compacted = 0;
+            try {
+                Path dir = persist ? Files.createDirectories(Paths.get(indexDir)) : null;
+                for (IndexShard shard : shards) {
+                    if (shard.needsCompaction(Math.max(1, maxSegments), persist)) {
+                        replaced.addAll(shard.compact(persist ? segmentPath(dir, shard) : null,
+                                Math.max(1, maxSegments), shards.length));
+                        compacted++;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error compacting fingerprint index: " + e.getMessage());
+            }
+
+            synchronized (updateLock) {
+                // Replaced files go only once no manifest refers to them
+                if (persistManifest()) {
+                    deleteUnreferenced();
+                } else {
+                    replaced.forEach(FingerprintIndex::deleteQuietly);
+                }
+            }
+
+            if (compacted > 0) {
+                System.out.println("🗜️ Fingerprint index compacted " + compacted + " shards in " +
+                        (System.currentTimeMillis() - startTime) + " ms");
+            }
+        }
+    }
+
+    /**
+     * Reload every shard from the fingerprints table in one scan.
+     * Matching keeps using the previous tables (or the database) until the new ones are swapped in.
+     */
+    public void rebuild() {
+        synchronized (updateLock) {
+            if (pendingChanges != null) {
+                System.out.println("⚠️ Fingerprint index rebuild already running");
+                return;
+            }
+            pendingChanges = new ArrayList<>();
+        }
+
+        long startTime = System.currentTimeMillis();
+        int shardCount = shards.length;
+        PostingTable[] fresh = new PostingTable[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            fresh[i] = new PostingTable();
+        }
+
+        try {
+            // Stream rows instead of buffering the whole table in the driver
+            jdbcTemplate.query(conn -> {
+                PreparedStatement ps = conn.prepareStatement(
+                        "SELECT song_id, hash, offset FROM fingerprints",
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(Integer.MIN_VALUE);
+                return ps;
+            }, rs -> {
+                int hash = rs.getInt(2);
+                fresh[IndexShard.shardOf(hash, shardCount)].add(rs.getInt(1), hash, rs.getInt(3));
+            });
+        } catch (Exception e) {
+            System.err.println("Error loading fingerprint index: " + e.getMessage());
+            synchronized (updateLock) {
+                pendingChanges = null;
+            }
+            return;
+        }
+
+        long totalPostings = 0;
+        synchronized (updateLock) {
+            for (int i = 0; i < shardCount; i++) {
+                for (PendingChange change : pendingChanges) {
+                    if (change.fingerprints == null) {
+                        fresh[i].removeSong(change.songId);
+                    } else if (!fresh[i].containsSong(change.songId)) {
+                        IndexShard.addAll(fresh[i], change.songId, change.fingerprints, i, shardCount);
+                    }
+                }
+                shards[i].replace(fresh[i]);
+                totalPostings += fresh[i].getTotalPostings();
+            }
+            pendingChanges = null;
+            persistManifest();
+            ready = true;
+        }
+
+        System.out.println("✅ Fingerprint index loaded: " + totalPostings + " postings in " + shardCount +
+                " shards in " + (System.currentTimeMillis() - startTime) + " ms");
+
+        compact();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Fill a batch with the postings of all its hashes, one lookup per shard.
+     * Returns false if the index is not loaded yet.
+     */
+    boolean collectPostings(FingerprintMatches.Builder builder) {
+        if (!ready) {
+            return false;
+        }
+
+        int[] hashes = builder.getHashes();
+        int shardCount = shards.length;
+
+        // Group hash positions by shard
+        int[] counts = new int[shardCount];
+        int[] shardOf = new int[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            shardOf[i] = IndexShard.shardOf(hashes[i], shardCount);
+            counts[shardOf[i]]++;
+        }
+        int[][] indexes = new int[shardCount][];
+        for (int s = 0; s < shardCount; s++) {
+            indexes[s] = new int[counts[s]];
+            counts[s] = 0;
+        }
+        for (int i = 0; i < hashes.length; i++) {
+            indexes[shardOf[i]][counts[shardOf[i]]++] = i;
+        }
+
+        // Each shard writes only the result slots of its own hashes
+        long[][] results = new long[hashes.length][];
+        IntStream shardIds = IntStream.range(0, shardCount);
+        if (hashes.length >= PARALLEL_LOOKUP_MIN_HASHES && shardCount > 1) {
+            shardIds = shardIds.parallel();
+        }
+        shardIds.forEach(s -> shards[s].lookup(hashes, indexes[s], counts[s], results));
+
+        // Merge back in ascending hash order
+        for (int i = 0; i < hashes.length; i++) {
+            long[] postings = results[i];
+            if (postings == null) {
+                continue;
+            }
+            for (long posting : postings) {
+                builder.add(hashes[i], PostingTable.songId(posting), PostingTable.offset(posting));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of fingerprints indexed for a song (0 if unknown or not loaded yet)
+     */
+    public int getFingerprintCount(int songId) {
+        int count = 0;
+        for (IndexShard shard : shards) {
+            count += shard.getSongPostings(songId);
+        }
+        return count;
+    }
+
+    /**
+     * Total number of indexed fingerprints (0 if not loaded yet)
+     */
+    public long getTotalFingerprintCount() {
+        long count = 0;
+        for (IndexShard shard : shards) {
+            count += shard.getTotalPostings();
+        }
+        return count;
+    }
+
+    /**
+     * Add a freshly uploaded song as a new segment in every shard it has fingerprints in.
+     * Call after its rows are committed to the fingerprints table.
+     */
+    public void addSong(int songId, FingerprintBuffer fingerprints) {
+        synchronized (updateLock) {
+            for (IndexShard shard : shards) {
+                if (!shard.isLoaded() || shard.containsSong(songId)) {
+                    continue;
+                }
+                PostingTable table = IndexShard.songTable(songId, fingerprints, shard.getId(), shards.length);
+                if (table.getTotalPostings() > 0) {
+                    shard.addSegment(writeSegment(shard, table));
+                }
+            }
+            persistManifest();
+            if (pendingChanges != null) {
+                pendingChanges.add(new PendingChange(songId, fingerprints));
+            }
+        }
+    }
+
+    /**
+     * Drop a deleted song from the index. Its postings stay in the segments until they are compacted.
+     */
+    public void removeSong(int songId) {
+        synchronized (updateLock) {
+            for (IndexShard shard : shards) {
+                shard.removeSong(songId);
+            }
+            persistManifest();
+            if (pendingChanges != null) {
+                pendingChanges.add(new PendingChange(songId, null));
+            }
+        }
+    }
+
+    /**
+     * Index statistics for debugging
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        List<Map<String, Object>> shardStats = new ArrayList<>();
+        for (IndexShard shard : shards) {
+            shardStats.add(shard.getStats());
+        }
+        synchronized (updateLock) {
+            stats.put("rebuilding", pendingChanges != null);
+        }
+        stats.put("ready", ready);
+        stats.put("snapshotDir", indexDir);
+        stats.put("postings", getTotalFingerprintCount());
+        stats.put("shards", shardStats);
+        return stats;
+    }
+
+    private boolean snapshotsEnabled() {
+        return indexDir != null && !indexDir.isBlank();
+    }
+
+    private Path segmentPath(Path dir, IndexShard shard) {
+        return dir.resolve("shard-" + shard.getId() + "-" + segmentSequence.incrementAndGet() + ".fpx");
+    }
+
+    /**
+     * The upload's postings for a shard as a mapped segment file, or the table itself if segments
+     * stay in memory or the file cannot be written (the next compaction retries)
+     */
+    private IndexSegment writeSegment(IndexShard shard, PostingTable table) {
+        if (!snapshotsEnabled()) {
+            return table;
+        }
+        try {
+            Path path = segmentPath(Files.createDirectories(Paths.get(indexDir)), shard);
+            IndexFile.write(path, shard.getId(), shards.length, table);
+            return MappedIndexFile.open(path);
+        } catch (IOException e) {
+            System.err.println("Error writing fingerprint index segment: " + e.getMessage());
+            return table;
+        }
+    }
+
+    /**
+     * Rewrite the manifest from the live segments. If some segment is only in memory (or a rebuild is
+     * running) the manifest is removed instead, so a restart rebuilds from the database. Callers hold updateLock.
+     */
+    private boolean persistManifest() {
+        if (!snapshotsEnabled()) {
+            return false;
+        }
+        Path dir = Paths.get(indexDir);
+        try {
+            boolean complete = pendingChanges == null;
+            for (IndexShard shard : shards) {
+                complete &= shard.isLoaded() && shard.isPersisted();
+            }
+            if (!complete) {
+                Files.deleteIfExists(dir.resolve(MANIFEST));
+                return false;
+            }
+
+            Properties manifest = new Properties();
+            manifest.setProperty("format", String.valueOf(IndexFile.VERSION));
+            manifest.setProperty("shards", String.valueOf(shards.length));
+            for (IndexShard shard : shards) {
+                List<String> names = new ArrayList<>();
+                shard.forEachSegment((segment, deleted) -> {
+                    String name = ((MappedIndexFile) segment).getPath().getFileName().toString();
+                    names.add(name);
+                    if (!deleted.isEmpty()) {
+                        manifest.setProperty("deleted." + name, joinList(deleted));
+                    }
+                });
+                manifest.setProperty("shard." + shard.getId(), String.join(",", names));
+            }
+
+            Path temp = dir.resolve(MANIFEST + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                manifest.store(out, "Fingerprint index segments");
+            }
+            Files.move(temp, dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing fingerprint index manifest: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Delete segment files that no live segment refers to. Callers hold updateLock and compactLock.
+     */
+    private void deleteUnreferenced() {
+        Set<String> referenced = new HashSet<>();
+        for (IndexShard shard : shards) {
+            shard.forEachSegment((segment, deleted) -> {
+                if (segment instanceof MappedIndexFile file) {
+                    referenced.add(file.getPath().getFileName().toString());
+                }
+            });
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(indexDir), "shard-*")) {
+            for (Path file : files) {
+                if (!referenced.contains(file.getFileName().toString())) {
+                    deleteQuietly(file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error cleaning fingerprint index directory: " + e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Still mapped on some platforms; removed by a later compaction
+        }
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    private static String joinList(Set<Integer> songIds) {
+        StringBuilder joined = new StringBuilder();
+        for (int songId : songIds) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(songId);
+        }
+        return joined.toString();
+    }
+
+    private static class PendingChange {
+        final int songId;
+        final FingerprintBuffer fingerprints; // null for a delete
+
+        PendingChange(int songId, FingerprintBuffer fingerprints) {
+            this.songId = songId;
+            this.fingerprints = fingerprints;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.eashan.shazam_api.service;
+
+import java.util.Arrays;
+
+/**
+ * Postings for a batch of query hashes in columnar form.
+ * Distinct hashes are kept sorted; the postings of hashes[i] live in
+ * songIds/offsets between start(i) (inclusive) and end(i) (exclusive).
+ */
+public class FingerprintMatches {
+
+    private final int[] hashes;
+    private final int[] starts;
+    private final int[] songIds;
+    private final int[] offsets;
+
+    private FingerprintMatches(int[] hashes, int[] starts, int[] songIds, int[] offsets) {
+        this.hashes = hashes;
+        this.starts = starts;
+        this.songIds = songIds;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Position of a hash in this batch, or -1 if it was not queried
+     */
+    public int indexOf(int hash) {
+        int index = Arrays.binarySearch(hashes, hash);
+        return index >= 0 ? index : -1;
+    }
+
+    public int start(int hashIndex) { return starts[hashIndex]; }
+    public int end(int hashIndex) { return starts[hashIndex + 1]; }
+    public int songId(int posting) { return songIds[posting]; }
+    public int offset(int posting) { return offsets[posting]; }
+
+    /**
+     * Sorted distinct copy of the given hashes, the key layout used by a batch
+     */
+    static int[] distinctSorted(int[] hashes) {
+        int[] sorted = hashes.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    /**
+     * Accumulates postings; rows must be added in non-decreasing hash order.
+     */
+    static class Builder {
+        private final int[] hashes;
+        private final int[] starts;
+        private int[] songIds = new int[256];
+        private int[] offsets = new int[256];
+        private int size = 0;
+        private int cursor = 0;
+
+        Builder(int[] sortedDistinctHashes) {
+            this.hashes = sortedDistinctHashes;
+            this.starts = new int[sortedDistinctHashes.length + 1];
+        }
+
+        int[] getHashes() { return hashes; }
+
+        void add(int hash, int songId, int offset) {
+            while (cursor < hashes.length && hashes[cursor] <= hash) {
+                starts[cursor++] = size;
+            }
+            if (cursor == 0 || hashes[cursor - 1] != hash) {
+                return; // Not a queried hash
+            }
+
+            if (size == songIds.length) {
+                songIds = Arrays.copyOf(songIds, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            songIds[size] = songId;
+            offsets[size] = offset;
+            size++;
+        }
+
+        FingerprintMatches build() {
+            while (cursor < hashes.length) {
+                starts[cursor++] = size;
+            }
+            starts[hashes.length] = size;
+            return new FingerprintMatches(hashes, starts, songIds, offsets);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.eashan.shazam_api.service;
+
+import com.eashan.shazam_api.exceptions.MatchRejectedException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Re-hashes songs stored with an older hash version (see songs.hash_version).
+ * Hashes cannot be converted in place, so each song is re-fingerprinted from its source audio
+ * and its rows in the fingerprints table are replaced.
+ */
+@Service
+public class FingerprintMigrationService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private FingerprintService fingerprintService;
+
+    @Autowired
+    private SongService songService;
+
+    @Autowired
+    private FingerprintIndex fingerprintIndex;
+
+    @Autowired
+    private HashStopList hashStopList;
+
+    @Autowired
+    private MatchExecutor matchExecutor;
+
+    @Autowired
+    private LegacyHashVersions legacyHashVersions;
+
+    // How long the job waits before retrying a song the match executor turned away
+    private static final long RETRY_DELAY_MS = 5000;
+
+    // Offline job input: source audio named <songId>.wav or <songId>.mp3
+    @Value("${fingerprint.rehash.source-dir:./rehash-sources}")
+    private String sourceDir;
+
+    private final AtomicBoolean jobRunning = new AtomicBoolean(false);
+    private volatile Map<String, Object> lastJobResult = new HashMap<>();
+
+    /**
+     * Replace a song's fingerprints with ones generated under the current hash version.
+     * Fingerprinting runs on the match executor; a full queue gives MatchRejectedException.
+     * The rows and the song's version are replaced in one transaction, and the index only after it commits.
+     */
+    public int rehashSong(int songId, InputStreamSource audio) throws Exception {
+        FingerprintService.FingerprintResult result = matchExecutor.runIngest(() -> fingerprintService.fingerprintTrack(audio));
+        FingerprintBuffer fingerprints = hashStopList.filterForStorage(result.getFingerprints());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM fingerprints WHERE song_id = ?", songId);
+            try {
+                songService.saveFingerprints(songId, fingerprints);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            jdbcTemplate.update("UPDATE songs SET hash_version = ? WHERE id = ?",
+                    FingerprintService.CURRENT_HASH_VERSION, songId);
+        });
+
+        fingerprintIndex.removeSong(songId);
+        fingerprintIndex.addSong(songId, fingerprints);
+        legacyHashVersions.songStored(songId, FingerprintService.CURRENT_HASH_VERSION);
+
+        System.out.println("🔁 Re-hashed song " + songId + ": " + fingerprints.size() + " fingerprints");
+        return fingerprints.size();
+    }
+
+    /**
+     * Start re-hashing every legacy song that has source audio in the configured directory.
+     * Returns false if a job is already running.
+     */
+    public boolean startRehashJob() {
+        if (!jobRunning.compareAndSet(false, true)) {
+            return false;
+        }
+
+        Thread worker = new Thread(() -> {
+            try {
+                lastJobResult = runRehashJob();
+            } finally {
+                jobRunning.set(false);
+            }
+        }, "fingerprint-rehash");
+        worker.setDaemon(true);
+        worker.start();
+        return true;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("currentHashVersion", FingerprintService.CURRENT_HASH_VERSION);
+        status.put("legacySongs", songService.getLegacyHashSongIds().size());
+        status.put("jobRunning", jobRunning.get());
+        status.put("sourceDir", sourceDir);
+        status.put("lastJob", lastJobResult);
+        return status;
+    }
+
+    private Map<String, Object> runRehashJob() {
+        int rehashed = 0;
+        List<Long> missingAudio = new ArrayList<>();
+        List<Long> failed = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+
+        for (Long songId : songService.getLegacyHashSongIds()) {
+            Path source = findSourceAudio(songId);
+            if (source == null) {
+                missingAudio.add(songId);
+                continue;
+            }
+
+            try {
+                rehashWhenAccepted(songId.intValue(), source);
+                rehashed++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                System.err.println("Error re-hashing song " + songId + ": " + e.getMessage());
+                failed.add(songId);
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("rehashed", rehashed);
+        result.put("missingAudio", missingAudio);
+        result.put("failed", failed);
+        result.put("durationMs", System.currentTimeMillis() - startTime);
+        System.out.println("✅ Re-hash job finished: " + result);
+        return result;
+    }
+
+    /**
+     * The job yields to match traffic: when the executor queue is full it waits and tries the song again
+     */
+    private void rehashWhenAccepted(int songId, Path source) throws Exception {
+        while (true) {
+            try {
+                rehashSong(songId, new FileSystemResource(source));
+                return;
+            } catch (MatchRejectedException e) {
+                Thread.sleep(RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    private Path findSourceAudio(Long songId) {
+        for (String extension : new String[]{".wav", ".mp3"}) {
+            Path candidate = Paths.get(sourceDir, songId + extension);
+            if (Files.isRegularFile(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+}
@@ -181,14 +181,19 @@
 //}
 package com.eashan.shazam_api.service;
 
-import org.apache.commons.math3.complex.Complex;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.TransformType;
+
+import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 
 @Service
 public class FingerprintService {
@@ -196,6 +201,12 @@ public class FingerprintService {
     // Optimized parameters for better matching
     private static final int WINDOW_SIZE = 4096;
     private static final int OVERLAP = 2048; // 50% overlap
+
+    // Canonical-rate schemes resample to CANONICAL_SAMPLE_RATE first. Window and hop shrink by the
+    // same factor as the rate from 44.1 kHz, so bins and frames still span ~10.8 Hz and ~46 ms.
+    public static final float CANONICAL_SAMPLE_RATE = 11025f;
+    private static final int CANONICAL_WINDOW_SIZE = 1024;
+    private static final int CANONICAL_OVERLAP = 512;
     private static final int TARGET_PEAKS_PER_FRAME = 5;
     private static final int PEAK_NEIGHBORHOOD_SIZE = 10;
     private static final int FAN_VALUE = 15; // Increased for more connections
@@ -210,172 +221,591 @@ public class FingerprintService {
     // Minimum magnitude threshold for peak detection
     private static final double MIN_MAGNITUDE_THRESHOLD = 0.01;
 
-    private static final FastFourierTransformer fft =
-            new FastFourierTransformer(DftNormalization.UNITARY);
+    // Hash schemes, recorded per song in songs.hash_version
+    public static final int HASH_VERSION_SHA1 = 1;   // first 4 bytes of SHA-1("f1:f2:dt")
+    public static final int HASH_VERSION_PACKED = 2; // anchor bin | target bin | time delta bit fields
+    public static final int HASH_VERSION_FRAMES = 3; // packed, with time delta and offsets in frames instead of ms
+    public static final int HASH_VERSION_CANONICAL = 4; // frames, computed on audio resampled to CANONICAL_SAMPLE_RATE
+    public static final int CURRENT_HASH_VERSION = HASH_VERSION_CANONICAL;
+
+    // Packed hash layout (sign bit unused): 9 bits anchor bin, 9 bits target bin, 13 bits time delta.
+    // Peaks are always below MAX_FREQ_BIN (512), so the bins fit without collisions.
+    private static final int FREQ_BITS = 9;
+    private static final int DELTA_BITS = 13;
+    private static final int FREQ_MASK = (1 << FREQ_BITS) - 1;
+    private static final int DELTA_MASK = (1 << DELTA_BITS) - 1;
+
+    // Parallel mode: frames are buffered in blocks and their peaks found on the frame pool
+    private static final int PARALLEL_BLOCK_FRAMES = 256;
+    private static final int PARALLEL_FRAMES_PER_TASK = 8;
+
+    // One FFT plan (and its scratch buffers) per thread, reused across frames and requests
+    private static final ThreadLocal<FftPlan> FFT_PLANS = ThreadLocal.withInitial(() -> new FftPlan(WINDOW_SIZE));
+    private static final ThreadLocal<FftPlan> CANONICAL_FFT_PLANS =
+            ThreadLocal.withInitial(() -> new FftPlan(CANONICAL_WINDOW_SIZE));
+    private static final ThreadLocal<PeakPicker> PEAK_PICKERS = ThreadLocal.withInitial(() ->
+            new PeakPicker(PEAK_NEIGHBORHOOD_SIZE, MIN_FREQ_BIN, MAX_FREQ_BIN, MIN_MAGNITUDE_THRESHOLD, TARGET_PEAKS_PER_FRAME));
+
+    @Autowired
+    private AudioProcessor audioProcessor;
+
+    // Fork/join pool for parallel frame blocks, sized here instead of sharing the common pool (0 = half the cores)
+    @Value("${fingerprint.parallel-threads:0}")
+    private int parallelThreads;
+
+    private volatile ForkJoinPool framePool;
+
+    public FingerprintBuffer generateFingerprint(double[] samples, double sampleRate) {
+        return generateFingerprint(samples, sampleRate, CURRENT_HASH_VERSION);
+    }
 
-    public List<int[]> generateFingerprint(double[] samples, double sampleRate) {
-        System.out.println("🎵 Starting fingerprint generation for " + samples.length + " samples at " + sampleRate + " Hz");
+    /**
+     * Fingerprint samples that are already in memory
+     */
+    public FingerprintBuffer generateFingerprint(double[] samples, double sampleRate, int hashVersion) {
+        double peak = peakAmplitude(samples);
+        if (usesCanonicalRate(hashVersion)) {
+            samples = AudioProcessor.resample(samples, sampleRate, CANONICAL_SAMPLE_RATE);
+            sampleRate = CANONICAL_SAMPLE_RATE;
+        }
+        FingerprintStream stream = new FingerprintStream(peak, new int[]{hashVersion}, false);
+        stream.begin(sampleRate);
+        stream.accept(samples, samples.length);
+        stream.finish();
+        return stream.getFingerprints(hashVersion);
+    }
 
-        // Normalize samples
-        samples = normalizeAudio(samples);
+    public FingerprintResult fingerprintAudio(InputStreamSource audio, int[] hashVersions) throws Exception {
+        return fingerprintAudio(audio, hashVersions, false);
+    }
 
-        List<int[]> peakList = new ArrayList<>();
-        int frameCount = 0;
+    /**
+     * Fingerprint a full-length track for the catalog, spreading the frame FFTs over all cores.
+     * The result is identical to the sequential path.
+     */
+    public FingerprintResult fingerprintTrack(InputStreamSource audio) throws Exception {
+        return fingerprintAudio(audio, new int[]{CURRENT_HASH_VERSION}, true);
+    }
 
-        // Apply FFT in sliding windows
-        for (int start = 0; start + WINDOW_SIZE <= samples.length; start += OVERLAP) {
-            double[] window = Arrays.copyOfRange(samples, start, start + WINDOW_SIZE);
+    /**
+     * Fingerprint an audio source without materialising it: decoded chunks go through a
+     * sliding window, FFT, peak picking and pairing as they arrive.
+     * Normalization needs the global peak first, so the source is decoded twice
+     * (peak scan, then fingerprinting); neither pass keeps the samples.
+     * Canonical-rate versions go through the resampling stage; older versions still need the
+     * native rate, so when both are asked for the decoded samples feed two streams.
+     */
+    public FingerprintResult fingerprintAudio(InputStreamSource audio, int[] hashVersions, boolean parallel)
+            throws Exception {
+        AudioProcessor.AudioInfo scan;
+        try (InputStream in = audio.getInputStream()) {
+            scan = audioProcessor.streamAudio(in, (samples, count) -> { });
+        }
 
-            // Apply window function
-            applyHammingWindow(window);
+        List<FingerprintStream> streams = new ArrayList<>();
+        AudioProcessor.SampleSink sink = fingerprintSink(scan.getPeakAmplitude(), hashVersions, parallel, streams);
 
-            // Get magnitudes from FFT
-            double[] magnitudes = applyFFT(window);
+        AudioProcessor.AudioInfo info;
+        try (InputStream in = audio.getInputStream()) {
+            info = audioProcessor.streamAudio(in, sink);
+        }
+        for (FingerprintStream stream : streams) {
+            stream.finish();
+        }
 
-            // Convert window position to time in milliseconds
-            double timeMs = ((double) start / sampleRate) * 1000.0;
+        return new FingerprintResult(info, streams);
+    }
 
-            // Find peaks in this frame
-            List<int[]> framePeaks = findTopPeaks(magnitudes, (int)timeMs, TARGET_PEAKS_PER_FRAME);
-            peakList.addAll(framePeaks);
+    /**
+     * Fingerprint a source in a single pass while it is still being read, e.g. a request body
+     * that is still uploading. With no peak scan, samples are normalized by the running peak: until the
+     * loudest sample has been read that divides by less than fingerprintAudio would, so more bins clear
+     * the magnitude threshold and the hashes can differ. Hashes anchored after it are the same.
+     * The listener sees the fingerprints emitted so far after every decoded chunk and can stop
+     * reading the source; the result then covers the audio read up to that point.
+     */
+    public FingerprintResult fingerprintLive(InputStream in, int[] hashVersions, LiveListener listener)
+            throws Exception {
+        List<FingerprintStream> streams = new ArrayList<>();
+        LiveSink sink = new LiveSink(fingerprintSink(0, hashVersions, false, streams), streams, listener);
+
+        AudioProcessor.AudioInfo info = audioProcessor.streamAudio(in, sink);
+        for (FingerprintStream stream : streams) {
+            stream.finish();
+        }
+        if (sink.stopped) {
+            System.out.println("⏹️ Stopped reading after " + String.format("%.2f", info.getDurationSeconds()) + " seconds");
+        }
+
+        return new FingerprintResult(info, streams);
+    }
 
-            frameCount++;
+    /**
+     * Called by fingerprintLive after every decoded chunk
+     */
+    public interface LiveListener {
+        /**
+         * progress has the format, samples and running peak read so far. Return false to stop reading.
+         */
+        boolean onChunk(FingerprintResult progress);
+    }
+
+    /**
+     * Build the sink chain for a set of hash versions: canonical-rate versions behind the resampling
+     * stage, native-rate ones on the decoded samples, both fed by one decode when needed.
+     * The streams are added to the given list.
+     */
+    private AudioProcessor.SampleSink fingerprintSink(double peakAmplitude, int[] hashVersions, boolean parallel,
+                                                      List<FingerprintStream> streams) {
+        int[] canonicalVersions = Arrays.stream(hashVersions).filter(FingerprintService::usesCanonicalRate).toArray();
+        int[] nativeVersions = Arrays.stream(hashVersions).filter(v -> !usesCanonicalRate(v)).toArray();
+        AudioProcessor.SampleSink sink = null;
+        if (canonicalVersions.length > 0) {
+            FingerprintStream stream = new FingerprintStream(peakAmplitude, canonicalVersions, parallel);
+            streams.add(stream);
+            sink = audioProcessor.resampling(stream, CANONICAL_SAMPLE_RATE);
+        }
+        if (nativeVersions.length > 0) {
+            FingerprintStream stream = new FingerprintStream(peakAmplitude, nativeVersions, parallel);
+            streams.add(stream);
+            sink = sink == null ? stream : AudioProcessor.tee(sink, stream);
         }
+        return sink;
+    }
 
-        System.out.println("🔍 Generated " + peakList.size() + " peaks from " + frameCount + " frames");
+    /**
+     * Front of the fingerprintLive chain: forwards samples, tracks progress and asks the listener after each chunk
+     */
+    private static class LiveSink implements AudioProcessor.SampleSink {
+        private final AudioProcessor.SampleSink next;
+        private final List<FingerprintStream> streams;
+        private final LiveListener listener;
+
+        private float sampleRate;
+        private int channels;
+        private long sampleCount = 0;
+        private double peak = 0;
+        private boolean stopped = false;
+
+        LiveSink(AudioProcessor.SampleSink next, List<FingerprintStream> streams, LiveListener listener) {
+            this.next = next;
+            this.streams = streams;
+            this.listener = listener;
+        }
 
-        // Generate fingerprints from peak pairs
-        List<int[]> fingerprints = generatePeakPairs(peakList);
+        @Override
+        public void start(float sampleRate, int channels) {
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            next.start(sampleRate, channels);
+        }
 
-//        // Limit fingerprints for performance
-//        if (fingerprints.size() > MAX_FINGERPRINTS) {
-//            fingerprints = fingerprints.subList(0, MAX_FINGERPRINTS);
-//        }
+        @Override
+        public void accept(double[] samples, int count) {
+            for (int i = 0; i < count; i++) {
+                peak = Math.max(peak, Math.abs(samples[i]));
+            }
+            // Normalize by the running peak, including this chunk, before any stream sees it
+            for (FingerprintStream stream : streams) {
+                stream.raisePeak(peak);
+            }
+            next.accept(samples, count);
+            sampleCount += count;
+            AudioProcessor.AudioInfo progress = new AudioProcessor.AudioInfo(sampleRate, channels, sampleCount, peak);
+            stopped = !listener.onChunk(new FingerprintResult(progress, streams));
+        }
+
+        @Override
+        public void end() {
+            next.end();
+        }
 
-        System.out.println("✅ Generated " + fingerprints.size() + " fingerprints");
-        return fingerprints;
+        @Override
+        public boolean isDone() {
+            return stopped;
+        }
     }
 
-    private double[] normalizeAudio(double[] samples) {
+    private ForkJoinPool framePool() {
+        ForkJoinPool pool = framePool;
+        if (pool == null) {
+            synchronized (this) {
+                if (framePool == null) {
+                    int threads = parallelThreads > 0 ? parallelThreads
+                            : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+                    framePool = new ForkJoinPool(threads, forkJoinPool -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                        thread.setName("fingerprint-frames-" + thread.getPoolIndex());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, null, false);
+                    System.out.println("🎛️ Fingerprint frame pool: " + threads + " threads");
+                }
+                pool = framePool;
+            }
+        }
+        return pool;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ForkJoinPool pool = framePool;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private static double peakAmplitude(double[] samples) {
         // Find the maximum absolute value
         double maxVal = 0.0;
         for (double sample : samples) {
             maxVal = Math.max(maxVal, Math.abs(sample));
         }
+        return maxVal;
+    }
 
-        // Normalize if needed
-        if (maxVal > 0 && maxVal != 1.0) {
-            double[] normalized = new double[samples.length];
-            for (int i = 0; i < samples.length; i++) {
-                normalized[i] = samples[i] / maxVal;
-            }
-            return normalized;
-        }
+    /**
+     * True if fingerprints of this hash version carry frame indices as offsets, false for milliseconds
+     */
+    public static boolean usesFrameOffsets(int hashVersion) {
+        return hashVersion >= HASH_VERSION_FRAMES;
+    }
 
-        return samples;
+    /**
+     * True if this hash version fingerprints audio resampled to CANONICAL_SAMPLE_RATE
+     */
+    public static boolean usesCanonicalRate(int hashVersion) {
+        return hashVersion >= HASH_VERSION_CANONICAL;
     }
 
-    private void applyHammingWindow(double[] window) {
-        for (int i = 0; i < window.length; i++) {
-            double multiplier = 0.54 - 0.46 * Math.cos(2 * Math.PI * i / (window.length - 1));
-            window[i] = window[i] * multiplier;
+    /**
+     * Duration of one frame hop in milliseconds at a native-rate scheme, to convert frame offsets at the API boundary
+     */
+    public static double frameDurationMs(double sampleRate) {
+        return OVERLAP * 1000.0 / sampleRate;
+    }
+
+    /**
+     * Milliseconds per unit of a fingerprint offset of this hash version, for audio decoded at sampleRate
+     */
+    public static double offsetUnitMs(int hashVersion, double sampleRate) {
+        if (usesCanonicalRate(hashVersion)) {
+            return CANONICAL_OVERLAP * 1000.0 / CANONICAL_SAMPLE_RATE;
         }
+        return usesFrameOffsets(hashVersion) ? frameDurationMs(sampleRate) : 1.0;
+    }
+
+    private int generateHash(int hashVersion, int freq1, int freq2, int timeDelta) {
+        return hashVersion == HASH_VERSION_SHA1
+                ? generateSha1Hash(freq1, freq2, timeDelta)
+                : generatePackedHash(freq1, freq2, timeDelta);
     }
 
-    private double[] applyFFT(double[] window) {
-        // Convert to complex numbers
-        Complex[] complexSamples = new Complex[window.length];
-        for (int i = 0; i < window.length; i++) {
-            complexSamples[i] = new Complex(window[i], 0);
+    /**
+     * Streaming fingerprint generator: a sample sink that slides a WINDOW_SIZE window by OVERLAP
+     * samples, runs the FFT per frame and feeds each frame's peaks to the pairers.
+     * Canonical-rate versions expect samples at CANONICAL_SAMPLE_RATE and use the smaller window;
+     * one stream only serves versions of the same kind.
+     * In parallel mode frames are buffered PARALLEL_BLOCK_FRAMES at a time and their peaks are
+     * found concurrently; pairing still sees them in frame order, so the output does not change.
+     */
+    public class FingerprintStream implements AudioProcessor.SampleSink {
+        private final boolean parallel;
+        private final int blockFrames;
+        private final double[] block;
+        private final double[] magnitudes;
+        private final int windowSize;
+        private final int overlap;
+        private final ThreadLocal<FftPlan> fftPlans;
+        private final int[][] blockPeaks;
+        private final PeakPairer[] pairers;
+
+        // Samples are divided by the source peak, like normalizing the whole track up front.
+        // Live input has no peak scan; fingerprintLive raises the divisor to the peak of the decoded
+        // samples read so far (see raisePeak).
+        private double divisor;
+
+        private double sampleRate;
+        private int filled = 0;
+        private long frameStart = 0;
+        private int frameCount = 0;
+        private int peakCount = 0;
+
+        FingerprintStream(double peakAmplitude, int[] hashVersions, boolean parallel) {
+            this.divisor = Math.max(0, peakAmplitude);
+            this.parallel = parallel;
+            boolean canonical = usesCanonicalRate(hashVersions[0]);
+            for (int hashVersion : hashVersions) {
+                if (usesCanonicalRate(hashVersion) != canonical) {
+                    throw new IllegalArgumentException("Canonical-rate and native-rate hash versions need separate streams");
+                }
+            }
+            this.windowSize = canonical ? CANONICAL_WINDOW_SIZE : WINDOW_SIZE;
+            this.overlap = canonical ? CANONICAL_OVERLAP : OVERLAP;
+            this.fftPlans = canonical ? CANONICAL_FFT_PLANS : FFT_PLANS;
+            this.magnitudes = new double[windowSize / 2];
+            this.blockFrames = parallel ? PARALLEL_BLOCK_FRAMES : 1;
+            this.block = new double[windowSize + (blockFrames - 1) * overlap];
+            this.blockPeaks = new int[blockFrames][];
+            this.pairers = new PeakPairer[hashVersions.length];
+            for (int i = 0; i < hashVersions.length; i++) {
+                pairers[i] = new PeakPairer(hashVersions[i]);
+            }
         }
 
-        // Perform FFT
-        Complex[] fftResult = fft.transform(complexSamples, TransformType.FORWARD);
+        @Override
+        public void start(float sampleRate, int channels) {
+            begin(sampleRate);
+        }
 
-        // Extract magnitudes (only positive frequencies)
-        double[] magnitudes = new double[window.length / 2];
-        for (int i = 0; i < magnitudes.length; i++) {
-            magnitudes[i] = fftResult[i].abs();
+        void begin(double sampleRate) {
+            this.sampleRate = sampleRate;
+            System.out.println("🎵 Starting fingerprint generation at " + sampleRate + " Hz" +
+                    (parallel ? " (parallel)" : ""));
         }
 
-        return magnitudes;
-    }
+        /**
+         * Raise the divisor to the peak of the decoded samples so far, at the native rate like the
+         * two-pass peak scan. Once the loudest sample has been read, frames made only of later
+         * samples are scaled, and so peak-picked and hashed, exactly as in the two-pass path.
+         */
+        void raisePeak(double peak) {
+            divisor = Math.max(divisor, peak);
+        }
+
+        @Override
+        public void accept(double[] samples, int count) {
+            double scale = divisor > 0 ? divisor : 1.0;
 
-    private List<int[]> findTopPeaks(double[] magnitudes, int timeMs, int numPeaks) {
-        List<int[]> peaks = new ArrayList<>();
+            int consumed = 0;
+            while (consumed < count) {
+                int n = Math.min(count - consumed, block.length - filled);
+                for (int i = 0; i < n; i++) {
+                    block[filled + i] = samples[consumed + i] / scale;
+                }
+                filled += n;
+                consumed += n;
 
-        // Find local maxima within frequency range
-        List<int[]> candidates = new ArrayList<>();
+                if (filled == block.length) {
+                    processBlock(blockFrames);
 
-        for (int i = MIN_FREQ_BIN; i < Math.min(MAX_FREQ_BIN, magnitudes.length - PEAK_NEIGHBORHOOD_SIZE); i++) {
-            // Skip if magnitude is too low
-            if (magnitudes[i] < MIN_MAGNITUDE_THRESHOLD) {
-                continue;
+                    // Slide past the processed frames, keeping the overlap of the next one
+                    System.arraycopy(block, blockFrames * overlap, block, 0, windowSize - overlap);
+                    filled = windowSize - overlap;
+                    frameStart += (long) blockFrames * overlap;
+                }
             }
+        }
 
-            // Check if this is a local maximum
-            boolean isLocalMax = true;
-            for (int j = Math.max(0, i - PEAK_NEIGHBORHOOD_SIZE);
-                 j <= Math.min(magnitudes.length - 1, i + PEAK_NEIGHBORHOOD_SIZE); j++) {
-                if (j != i && magnitudes[j] >= magnitudes[i]) {
-                    isLocalMax = false;
-                    break;
+        private void processBlock(int frames) {
+            if (parallel && frames > 1) {
+                framePool().invoke(new FrameTask(this, 0, frames));
+            } else {
+                for (int frame = 0; frame < frames; frame++) {
+                    blockPeaks[frame] = framePeaks(frame, magnitudes);
                 }
             }
 
-            if (isLocalMax) {
-                // Store frequency bin and scaled magnitude
-                candidates.add(new int[]{i, (int)(magnitudes[i] * 10000)});
+            // Pair in frame order regardless of which thread found the peaks
+            for (int frame = 0; frame < frames; frame++) {
+                int timeMs = frameTimeMs(frame);
+                int frameIndex = (int) (frameStart / overlap) + frame;
+                for (int freq : blockPeaks[frame]) {
+                    for (PeakPairer pairer : pairers) {
+                        pairer.addPeak(freq, frameIndex, timeMs);
+                    }
+                    peakCount++;
+                }
+                blockPeaks[frame] = null;
             }
+            frameCount += frames;
         }
 
-        // Sort by magnitude (descending)
-        candidates.sort((a, b) -> Integer.compare(b[1], a[1]));
+        private int[] framePeaks(int frame, double[] magnitudes) {
+            // Hamming window + FFT, magnitudes written into the caller's buffer
+            fftPlans.get().magnitudes(block, frame * overlap, magnitudes);
 
-        // Take the top N peaks
-        for (int i = 0; i < Math.min(numPeaks, candidates.size()); i++) {
-            int freq = candidates.get(i)[0];
-            peaks.add(new int[]{freq, timeMs});
+            // Find peaks in this frame
+            return PEAK_PICKERS.get().pick(magnitudes);
         }
 
-        return peaks;
-    }
+        private int frameTimeMs(int frame) {
+            // Convert window position to time in milliseconds
+            double timeMs = ((double) (frameStart + (long) frame * overlap) / sampleRate) * 1000.0;
+            return (int) timeMs;
+        }
 
-    private List<int[]> generatePeakPairs(List<int[]> peakList) {
-        List<int[]> fingerprints = new ArrayList<>();
+        /**
+         * Flush buffered frames and anchors still waiting for targets. Call once after the last chunk.
+         */
+        public void finish() {
+            if (filled >= windowSize) {
+                processBlock((filled - windowSize) / overlap + 1);
+                filled = 0;
+            }
+            for (PeakPairer pairer : pairers) {
+                pairer.finish();
+            }
+            System.out.println("🔍 Generated " + peakCount + " peaks from " + frameCount + " frames");
+        }
 
-        // Sort peaks by time to ensure proper pairing
-        peakList.sort(Comparator.comparingInt(peak -> peak[1]));
+        boolean generates(int hashVersion) {
+            for (PeakPairer pairer : pairers) {
+                if (pairer.hashVersion == hashVersion) {
+                    return true;
+                }
+            }
+            return false;
+        }
 
-        // Generate pairs from each anchor point
-        for (int i = 0; i < peakList.size(); i++) {
-            int[] anchor = peakList.get(i);
-            int anchorFreq = anchor[0];
-            int anchorTime = anchor[1];
+        public FingerprintBuffer getFingerprints(int hashVersion) {
+            for (PeakPairer pairer : pairers) {
+                if (pairer.hashVersion == hashVersion) {
+                    return pairer.fingerprints;
+                }
+            }
+            throw new IllegalArgumentException("Hash version " + hashVersion + " was not generated");
+        }
+    }
 
-            // Look for target points within the fan
-            int targetsFound = 0;
-            for (int j = i + 1; j < peakList.size() && targetsFound < FAN_VALUE; j++) {
-                int[] target = peakList.get(j);
-                int targetFreq = target[0];
-                int targetTime = target[1];
+    /**
+     * Finds the peaks of a range of buffered frames, splitting until PARALLEL_FRAMES_PER_TASK.
+     * Each frame writes only its own blockPeaks slot.
+     */
+    private static class FrameTask extends RecursiveAction {
+        private final FingerprintStream stream;
+        private final int from;
+        private final int to;
+
+        FrameTask(FingerprintStream stream, int from, int to) {
+            this.stream = stream;
+            this.from = from;
+            this.to = to;
+        }
 
-                int timeDelta = targetTime - anchorTime;
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_FRAMES_PER_TASK) {
+                double[] magnitudes = new double[stream.windowSize / 2];
+                for (int frame = from; frame < to; frame++) {
+                    stream.blockPeaks[frame] = stream.framePeaks(frame, magnitudes);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new FrameTask(stream, from, mid), new FrameTask(stream, mid, to));
+        }
+    }
+
+    /**
+     * Incremental peak pairing. Peaks arrive in time order; each anchor is paired with the next
+     * FAN_VALUE peaks within MAX_TIME_DELTA. An anchor's fingerprints are emitted once its fan is
+     * closed, oldest anchor first, so the output order matches pairing a complete peak list.
+     * The fan window is always in milliseconds, so every hash version pairs the same peaks;
+     * frame-offset versions hash and store frame indices instead.
+     */
+    private class PeakPairer {
+        private static final int FREQ = 0;
+        private static final int TIME = 1;
+        private static final int FRAME = 2;
+        private static final int FOUND = 3;
+        private static final int HASHES = 4;
+
+        private final int hashVersion;
+        private final boolean frameOffsets;
+        private final FingerprintBuffer fingerprints = new FingerprintBuffer();
+
+        // Open anchors: [freq, time (ms), frame index, targets found, target hashes...]
+        private final ArrayDeque<int[]> pending = new ArrayDeque<>();
+
+        PeakPairer(int hashVersion) {
+            this.hashVersion = hashVersion;
+            this.frameOffsets = usesFrameOffsets(hashVersion);
+        }
+
+        void addPeak(int freq, int frame, int time) {
+            // Use this peak as a target for every open anchor
+            for (int[] anchor : pending) {
+                if (anchor[FOUND] >= FAN_VALUE) {
+                    continue;
+                }
+                int timeDelta = time - anchor[TIME];
 
                 // Check time delta constraints
                 if (timeDelta >= MIN_TIME_DELTA && timeDelta <= MAX_TIME_DELTA) {
-                    // Generate hash for this peak pair
-                    int hash = generateHash(anchorFreq, targetFreq, timeDelta);
-                    fingerprints.add(new int[]{hash, anchorTime});
-                    targetsFound++;
+                    int hashDelta = frameOffsets ? frame - anchor[FRAME] : timeDelta;
+                    anchor[HASHES + anchor[FOUND]++] = generateHash(hashVersion, anchor[FREQ], freq, hashDelta);
                 }
             }
+
+            // Anchors with a full fan, or too old for later peaks, are done
+            while (!pending.isEmpty()) {
+                int[] oldest = pending.peekFirst();
+                if (oldest[FOUND] < FAN_VALUE && time - oldest[TIME] <= MAX_TIME_DELTA) {
+                    break;
+                }
+                emit(pending.pollFirst());
+            }
+
+            int[] anchor = new int[HASHES + FAN_VALUE];
+            anchor[FREQ] = freq;
+            anchor[TIME] = time;
+            anchor[FRAME] = frame;
+            pending.addLast(anchor);
+        }
+
+        void finish() {
+            while (!pending.isEmpty()) {
+                emit(pending.pollFirst());
+            }
         }
 
-        return fingerprints;
+        private void emit(int[] anchor) {
+            int offset = frameOffsets ? anchor[FRAME] : anchor[TIME];
+            for (int i = 0; i < anchor[FOUND]; i++) {
+                fingerprints.add(anchor[HASHES + i], offset);
+            }
+        }
+    }
+
+    /**
+     * Fingerprints of a streamed source with the decoded audio's (native) format
+     */
+    public static class FingerprintResult {
+        private final AudioProcessor.AudioInfo audioInfo;
+        private final List<FingerprintStream> streams;
+
+        FingerprintResult(AudioProcessor.AudioInfo audioInfo, List<FingerprintStream> streams) {
+            this.audioInfo = audioInfo;
+            this.streams = streams;
+        }
+
+        public AudioProcessor.AudioInfo getAudioInfo() { return audioInfo; }
+        public FingerprintBuffer getFingerprints() { return getFingerprints(CURRENT_HASH_VERSION); }
+
+        public FingerprintBuffer getFingerprints(int hashVersion) {
+            for (FingerprintStream stream : streams) {
+                if (stream.generates(hashVersion)) {
+                    return stream.getFingerprints(hashVersion);
+                }
+            }
+            throw new IllegalArgumentException("Hash version " + hashVersion + " was not generated");
+        }
+    }
+
+    /**
+     * Current hash scheme: the peak pair packed into bit fields, no allocation or digest
+     */
+    static int generatePackedHash(int freq1, int freq2, int timeDelta) {
+        return ((freq1 & FREQ_MASK) << (FREQ_BITS + DELTA_BITS)) |
+                ((freq2 & FREQ_MASK) << DELTA_BITS) |
+                (timeDelta & DELTA_MASK);
     }
 
-    private int generateHash(int freq1, int freq2, int timeDelta) {
+    /**
+     * Legacy hash scheme, kept to match songs that have not been re-hashed yet
+     */
+    private int generateSha1Hash(int freq1, int freq2, int timeDelta) {
         try {
             // Use a more consistent hash generation
             String data = freq1 + ":" + freq2 + ":" + timeDelta;
@@ -0,0 +1,125 @@
+package com.eashan.shazam_api.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hashes that occur in too many songs to tell them apart (silence, hum, clicks).
+ * Recomputed periodically from the fingerprints table by document frequency; matching skips them
+ * and uploads can optionally leave them out.
+ */
+@Service
+public class HashStopList {
+
+    private static final int[] NO_HASHES = new int[0];
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // A hash is stopped once it appears in at least this fraction of all songs...
+    @Value("${fingerprint.stoplist.max-song-fraction:0.05}")
+    private double maxSongFraction;
+
+    // ...and in at least this many songs, so small catalogs keep every hash
+    @Value("${fingerprint.stoplist.min-songs:50}")
+    private int minSongs;
+
+    @Value("${fingerprint.stoplist.skip-on-upload:false}")
+    private boolean skipOnUpload;
+
+    // Sorted, replaced wholesale on refresh
+    private volatile int[] stoppedHashes = NO_HASHES;
+    private volatile int songThreshold = 0;
+    private volatile long lastRefresh = 0;
+
+    @Scheduled(initialDelayString = "${fingerprint.stoplist.initial-delay-ms:60000}",
+            fixedDelayString = "${fingerprint.stoplist.refresh-ms:3600000}")
+    public void refresh() {
+        long startTime = System.currentTimeMillis();
+        try {
+            Integer totalSongs = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM songs", Integer.class);
+            int threshold = Math.max(minSongs, (int) Math.ceil(maxSongFraction * (totalSongs == null ? 0 : totalSongs)));
+
+            List<Integer> hashes = jdbcTemplate.queryForList(
+                    "SELECT hash FROM fingerprints GROUP BY hash HAVING COUNT(DISTINCT song_id) >= ?",
+                    Integer.class, threshold);
+
+            int[] stopped = new int[hashes.size()];
+            for (int i = 0; i < stopped.length; i++) {
+                stopped[i] = hashes.get(i);
+            }
+            Arrays.sort(stopped);
+
+            stoppedHashes = stopped;
+            songThreshold = threshold;
+            lastRefresh = System.currentTimeMillis();
+
+            System.out.println("🛑 Hash stop-list refreshed: " + stopped.length + " hashes in >= " + threshold +
+                    " songs (" + (lastRefresh - startTime) + " ms)");
+        } catch (Exception e) {
+            System.err.println("Error refreshing hash stop-list: " + e.getMessage());
+        }
+    }
+
+    public boolean isStopped(int hash) {
+        int[] stopped = stoppedHashes;
+        return stopped.length > 0 && Arrays.binarySearch(stopped, hash) >= 0;
+    }
+
+    /**
+     * Drop stopped hashes from a sorted distinct hash array (returns the same array if none are stopped)
+     */
+    public int[] removeStopped(int[] sortedHashes) {
+        int[] stopped = stoppedHashes;
+        if (stopped.length == 0) {
+            return sortedHashes;
+        }
+
+        int[] kept = new int[sortedHashes.length];
+        int count = 0;
+        int s = 0;
+        for (int hash : sortedHashes) {
+            while (s < stopped.length && stopped[s] < hash) {
+                s++;
+            }
+            if (s == stopped.length || stopped[s] != hash) {
+                kept[count++] = hash;
+            }
+        }
+        return count == sortedHashes.length ? sortedHashes : Arrays.copyOf(kept, count);
+    }
+
+    /**
+     * Fingerprints to store for a song: without stopped hashes if skip-on-upload is enabled
+     */
+    public FingerprintBuffer filterForStorage(FingerprintBuffer fingerprints) {
+        if (!skipOnUpload || stoppedHashes.length == 0) {
+            return fingerprints;
+        }
+
+        FingerprintBuffer kept = new FingerprintBuffer(fingerprints.size());
+        for (int i = 0; i < fingerprints.size(); i++) {
+            if (!isStopped(fingerprints.hash(i))) {
+                kept.add(fingerprints.hash(i), fingerprints.offset(i));
+            }
+        }
+        return kept;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hashes", stoppedHashes.length);
+        stats.put("songThreshold", songThreshold);
+        stats.put("skipOnUpload", skipOnUpload);
+        stats.put("lastRefresh", lastRefresh);
+        return stats;
+    }
+}
@@ -0,0 +1,277 @@
+package com.eashan.shazam_api.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Binary format of an index shard snapshot, opened read-only with MappedIndexFile.
+ *
+ * <pre>
+ * header      64 bytes, see HEADER_SIZE
+ * postings    per hash, postings sorted by (songId, offset) in blocks of POSTING_BLOCK:
+ *             varint first songId, varint min offset, byte song bits, byte offset bits,
+ *             bit-packed songId deltas (the first is 0), bit-packed offsets minus the min offset
+ * keys        per hash in ascending order: varint hash delta (0 for the first key of a block),
+ *             varint posting count, varint posting bytes
+ * directory   every DIRECTORY_INTERVAL-th key: int hash, long key position, long posting position
+ * songs       per song in ascending id order: int songId, int posting count
+ * </pre>
+ *
+ * Varints are unsigned LEB128 of the 32-bit value. Bit-packed values are little-endian, LSB first,
+ * padded to a whole byte per column. All multi-byte fixed fields are big-endian.
+ */
+final class IndexFile {
+
+    static final int MAGIC = 0x46505831; // "FPX1"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int DIRECTORY_INTERVAL = 64;
+    static final int DIRECTORY_ENTRY_SIZE = 20;
+    static final int POSTING_BLOCK = 128;
+
+    private IndexFile() {
+    }
+
+    /**
+     * Source of (hash, postings) pairs in ascending hash order
+     */
+    interface Source {
+        /**
+         * Call sink for every hash with at least one posting, in ascending hash order.
+         * Postings are packed as (songId << 32 | offset) and sorted ascending.
+         */
+        void forEach(Sink sink) throws IOException;
+    }
+
+    interface Sink {
+        void accept(int hash, long[] postings, int count) throws IOException;
+    }
+
+    /**
+     * Write a snapshot to path (via a temporary file in the same directory)
+     */
+    static void write(Path path, int shard, int shardCount, Source source) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Writer writer = new Writer();
+
+        try (CountingOutputStream out = new CountingOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.write(new byte[HEADER_SIZE]);
+            writer.out = out;
+            source.forEach(writer::add);
+            writer.finish(out);
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw")) {
+            file.seek(0);
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(shard);
+            file.writeInt(shardCount);
+            file.writeInt(writer.hashCount);
+            file.writeInt(writer.songPostings.size());
+            file.writeLong(writer.totalPostings);
+            file.writeLong(HEADER_SIZE);
+            file.writeLong(writer.keysPosition);
+            file.writeLong(writer.directoryPosition);
+            file.writeLong(writer.songsPosition);
+            file.getFD().sync();
+        }
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Write all postings of a segment to path
+     */
+    static void write(Path path, int shard, int shardCount, IndexSegment segment) throws IOException {
+        write(path, shard, shardCount, sink -> {
+            IndexSegment.Cursor cursor = segment.cursor();
+            while (cursor.next()) {
+                long[] postings = cursor.postings();
+                sink.accept(cursor.hash(), postings, postings.length);
+            }
+        });
+    }
+
+    private static class Writer {
+        CountingOutputStream out;
+        final ByteArrayOutputStream keys = new ByteArrayOutputStream();
+        final ByteArrayOutputStream directory = new ByteArrayOutputStream();
+        final SongCounts songPostings = new SongCounts();
+
+        int hashCount = 0;
+        long totalPostings = 0;
+        long keysPosition;
+        long directoryPosition;
+        long songsPosition;
+
+        private int previousHash;
+        private final byte[] scratch = new byte[5];
+
+        void add(int hash, long[] postings, int count) throws IOException {
+            long postingStart = out.count - HEADER_SIZE;
+
+            for (int from = 0; from < count; from += POSTING_BLOCK) {
+                writeBlock(postings, from, Math.min(count, from + POSTING_BLOCK));
+            }
+            for (int i = 0; i < count; i++) {
+                songPostings.add(PostingTable.songId(postings[i]), 1);
+            }
+
+            if (hashCount % DIRECTORY_INTERVAL == 0) {
+                writeInt(directory, hash);
+                writeLong(directory, keys.size());
+                writeLong(directory, postingStart);
+                writeVarint(keys, 0);
+            } else {
+                writeVarint(keys, hash - previousHash);
+            }
+            writeVarint(keys, count);
+            writeVarint(keys, (int) (out.count - HEADER_SIZE - postingStart));
+
+            previousHash = hash;
+            hashCount++;
+            totalPostings += count;
+        }
+
+        void finish(CountingOutputStream out) throws IOException {
+            keysPosition = out.count;
+            keys.writeTo(out);
+            directoryPosition = out.count;
+            directory.writeTo(out);
+            songsPosition = out.count;
+            ByteArrayOutputStream songTable = new ByteArrayOutputStream(songPostings.size() * 8);
+            for (int songId : songPostings.sortedSongIds()) {
+                writeInt(songTable, songId);
+                writeInt(songTable, songPostings.get(songId));
+            }
+            songTable.writeTo(out);
+
+            if (out.count > Integer.MAX_VALUE) {
+                throw new IOException("Index shard snapshot exceeds 2 GB (" + out.count + " bytes); configure more shards");
+            }
+        }
+
+        /**
+         * Frame of reference per block: song ids as deltas from the block's first id, offsets minus the block's minimum
+         */
+        private void writeBlock(long[] postings, int from, int to) throws IOException {
+            int firstSong = PostingTable.songId(postings[from]);
+            int minOffset = Integer.MAX_VALUE;
+            int maxSongDelta = 0;
+            for (int i = from; i < to; i++) {
+                minOffset = Math.min(minOffset, PostingTable.offset(postings[i]));
+                if (i > from) {
+                    maxSongDelta |= PostingTable.songId(postings[i]) - PostingTable.songId(postings[i - 1]);
+                }
+            }
+            int maxOffsetDelta = 0;
+            for (int i = from; i < to; i++) {
+                maxOffsetDelta |= PostingTable.offset(postings[i]) - minOffset;
+            }
+            int songBits = bitWidth(maxSongDelta);
+            int offsetBits = bitWidth(maxOffsetDelta);
+
+            writeVarint(out, firstSong);
+            writeVarint(out, minOffset);
+            out.write(songBits);
+            out.write(offsetBits);
+
+            int[] values = new int[to - from];
+            for (int i = from + 1; i < to; i++) {
+                values[i - from] = PostingTable.songId(postings[i]) - PostingTable.songId(postings[i - 1]);
+            }
+            writePacked(values, songBits);
+            for (int i = from; i < to; i++) {
+                values[i - from] = PostingTable.offset(postings[i]) - minOffset;
+            }
+            writePacked(values, offsetBits);
+        }
+
+        private void writePacked(int[] values, int bits) throws IOException {
+            if (bits == 0) {
+                return;
+            }
+            long mask = (1L << bits) - 1;
+            long buffer = 0;
+            int buffered = 0;
+            for (int value : values) {
+                buffer |= (value & mask) << buffered;
+                buffered += bits;
+                while (buffered >= 8) {
+                    out.write((int) buffer);
+                    buffer >>>= 8;
+                    buffered -= 8;
+                }
+            }
+            if (buffered > 0) {
+                out.write((int) buffer);
+            }
+        }
+
+        private void writeVarint(OutputStream target, int value) throws IOException {
+            int length = 0;
+            while ((value & ~0x7F) != 0) {
+                scratch[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            scratch[length++] = (byte) value;
+            target.write(scratch, 0, length);
+        }
+    }
+
+    // Bits needed for an unsigned value; OR-ing a block's values gives the width of the largest
+    static int bitWidth(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        writeInt(out, (int) (value >>> 32));
+        writeInt(out, (int) value);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream delegate;
+        long count = 0;
+
+        CountingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.eashan.shazam_api.service;
+
+/**
+ * Immutable set of postings for one shard: a mapped IndexFile, or a PostingTable that is
+ * no longer written to. An IndexShard searches all of its live segments.
+ */
+interface IndexSegment {
+
+    /**
+     * Postings for a hash, packed as (songId << 32 | offset); empty if the hash is unknown
+     */
+    long[] get(int hash);
+
+    boolean containsSong(int songId);
+
+    int getSongPostings(int songId);
+
+    long getTotalPostings();
+
+    int getDistinctHashes();
+
+    int getSongCount();
+
+    /**
+     * Sequential reader over all hashes in ascending order, used to merge segments
+     */
+    Cursor cursor();
+
+    interface Cursor {
+        /**
+         * Advance to the next hash; false once all hashes were read
+         */
+        boolean next();
+
+        int hash();
+
+        long[] postings();
+    }
+}
@@ -0,0 +1,523 @@
+package com.eashan.shazam_api.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * One hash-range partition of the fingerprint index with its own segments and lock,
+ * so lookups and updates on different shards never contend.
+ * The batch lookup is the unit a query fans out, one call per shard.
+ *
+ * Log-structured: the shard is a list of immutable IndexSegments, oldest first. Every upload
+ * appends a small segment and a delete only records the song against the segments holding it;
+ * lookups search all segments and skip deleted songs. compact() merges runs of segments into one
+ * and drops the postings of deleted songs, without blocking lookups while it writes.
+ */
+class IndexShard {
+
+    private static final long[] NO_POSTINGS = new long[0];
+
+    // Merge everything once deleted songs make up this share of a segment's postings
+    private static final double MAX_DELETED_FRACTION = 0.25;
+
+    // Newer segments are merged into a run while the next older one is at most this many times the run's size
+    private static final int TIER_RATIO = 4;
+
+    private final int id;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // False until the first load has finished
+    private boolean loaded = false;
+    private long loadedAt = 0;
+
+    // Oldest first; only compact() removes entries, everything else appends
+    private final List<LiveSegment> segments = new ArrayList<>();
+
+    // Bumped by every wholesale replace, so a merge of older segments is discarded
+    private long generation = 0;
+
+    IndexShard(int id) {
+        this.id = id;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    boolean isLoaded() {
+        lock.readLock().lock();
+        try {
+            return loaded;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * True if every segment is a mapped file
+     */
+    boolean isPersisted() {
+        lock.readLock().lock();
+        try {
+            for (LiveSegment segment : segments) {
+                if (!(segment.postings instanceof MappedIndexFile)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visit every segment with the songs deleted from it, oldest first
+     */
+    void forEachSegment(BiConsumer<IndexSegment, Set<Integer>> consumer) {
+        lock.readLock().lock();
+        try {
+            for (LiveSegment segment : segments) {
+                consumer.accept(segment.postings, segment.deleted);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Swap in a freshly built table as the only segment
+     */
+    void replace(PostingTable fresh) {
+        lock.writeLock().lock();
+        try {
+            segments.clear();
+            segments.add(new LiveSegment(fresh));
+            generation++;
+            loaded = true;
+            loadedAt = System.currentTimeMillis();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Swap in mapped segment files, oldest first, with the songs already deleted from each
+     */
+    void open(List<MappedIndexFile> files, List<Set<Integer>> deleted) {
+        lock.writeLock().lock();
+        try {
+            segments.clear();
+            for (int i = 0; i < files.size(); i++) {
+                LiveSegment segment = new LiveSegment(files.get(i));
+                for (int songId : deleted.get(i)) {
+                    segment.delete(songId);
+                }
+                segments.add(segment);
+            }
+            generation++;
+            loaded = true;
+            loadedAt = System.currentTimeMillis();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    long[] get(int hash) {
+        lock.readLock().lock();
+        try {
+            return postingsOf(hash);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Postings of hashes[indexes[i]] for every i, written to results at the same global index
+     */
+    void lookup(int[] hashes, int[] indexes, int count, long[][] results) {
+        lock.readLock().lock();
+        try {
+            if (!loaded) {
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                results[indexes[i]] = postingsOf(hashes[indexes[i]]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean containsSong(int songId) {
+        lock.readLock().lock();
+        try {
+            for (LiveSegment segment : segments) {
+                if (segment.contains(songId)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Append a segment holding one upload. Returns false (and drops it) if the shard is not loaded yet.
+     */
+    boolean addSegment(IndexSegment segment) {
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                return false;
+            }
+            segments.add(new LiveSegment(segment));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Mark a song deleted in every segment holding it. Returns false if the shard did not hold it.
+     */
+    boolean removeSong(int songId) {
+        lock.writeLock().lock();
+        try {
+            boolean removed = false;
+            for (LiveSegment segment : segments) {
+                if (segment.contains(songId)) {
+                    segment.delete(songId);
+                    removed = true;
+                }
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int getSongPostings(int songId) {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (LiveSegment segment : segments) {
+                if (segment.contains(songId)) {
+                    count += segment.postings.getSongPostings(songId);
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long getTotalPostings() {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            for (LiveSegment segment : segments) {
+                total += segment.postings.getTotalPostings() - segment.deletedPostings;
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean needsCompaction(int maxSegments, boolean persist) {
+        lock.readLock().lock();
+        try {
+            return compactionStart(maxSegments, persist) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Merge the run of newest segments picked by the tiering policy into one, dropping deleted songs.
+     * With a target path the merged segment is written there and mapped, otherwise it stays in memory.
+     * Lookups and uploads continue while merging. Returns the segment files that were replaced (to delete).
+     * Callers must not compact the same shard twice at once.
+     */
+    List<Path> compact(Path target, int maxSegments, int shardCount) throws IOException {
+        List<LiveSegment> run;
+        List<Set<Integer>> deletedAtStart = new ArrayList<>();
+        int from;
+        long startGeneration;
+
+        lock.writeLock().lock();
+        try {
+            from = compactionStart(maxSegments, target != null);
+            if (from < 0) {
+                return List.of();
+            }
+            run = new ArrayList<>(segments.subList(from, segments.size()));
+            for (LiveSegment segment : run) {
+                deletedAtStart.add(new HashSet<>(segment.deleted));
+            }
+            startGeneration = generation;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long expected = 0;
+        for (LiveSegment segment : run) {
+            expected += segment.postings.getTotalPostings();
+        }
+
+        IndexSegment merged;
+        if (target != null) {
+            try {
+                IndexFile.write(target, id, shardCount, sink -> merge(run, deletedAtStart, sink));
+                merged = MappedIndexFile.open(target);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(target);
+                throw e;
+            }
+        } else {
+            PostingTable table = new PostingTable((int) Math.min(Integer.MAX_VALUE / 4, expected / 2));
+            merge(run, deletedAtStart, (hash, postings, count) -> {
+                for (int i = 0; i < count; i++) {
+                    table.add(PostingTable.songId(postings[i]), hash, PostingTable.offset(postings[i]));
+                }
+            });
+            merged = table;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (generation != startGeneration) {
+                if (target != null) {
+                    Files.deleteIfExists(target);
+                }
+                return List.of();
+            }
+
+            // Songs deleted while merging are still in the merged segment
+            LiveSegment replacement = new LiveSegment(merged);
+            for (int i = 0; i < run.size(); i++) {
+                for (int songId : run.get(i).deleted) {
+                    if (!deletedAtStart.get(i).contains(songId) && merged.containsSong(songId)) {
+                        replacement.delete(songId);
+                    }
+                }
+            }
+
+            segments.subList(from, from + run.size()).clear();
+            if (merged.getTotalPostings() > 0) {
+                segments.add(from, replacement);
+            } else if (target != null) {
+                Files.deleteIfExists(target);
+            }
+
+            List<Path> replaced = new ArrayList<>();
+            for (LiveSegment segment : run) {
+                if (segment.postings instanceof MappedIndexFile file) {
+                    replaced.add(file.getPath());
+                }
+            }
+            return replaced;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("shard", id);
+            stats.put("loaded", loaded);
+            if (loaded) {
+                List<Map<String, Object>> segmentStats = new ArrayList<>();
+                for (LiveSegment segment : segments) {
+                    Map<String, Object> segmentStat = new HashMap<>();
+                    segmentStat.put("postings", segment.postings.getTotalPostings());
+                    segmentStat.put("songs", segment.postings.getSongCount());
+                    segmentStat.put("deletedSongs", segment.deleted.size());
+                    if (segment.postings instanceof MappedIndexFile file) {
+                        segmentStat.put("file", file.getPath().getFileName().toString());
+                        segmentStat.put("bytes", file.getSizeBytes());
+                    }
+                    segmentStats.add(segmentStat);
+                }
+                stats.put("segments", segmentStats);
+                stats.put("loadedAt", loadedAt);
+            }
+            stats.put("postings", getTotalPostings());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return stats;
+    }
+
+    static int shardOf(int hash, int shardCount) {
+        // Range of the mixed hash: raw packed hashes lead with the anchor bin, which is far from uniform
+        int h = hash * 0x9E3779B9;
+        return (int) (((h ^ (h >>> 16)) & 0xFFFFFFFFL) * shardCount >>> 32);
+    }
+
+    /**
+     * Add the fingerprints of a song that belong to the given shard
+     */
+    static void addAll(PostingTable target, int songId, FingerprintBuffer fingerprints, int shard, int shardCount) {
+        for (int i = 0; i < fingerprints.size(); i++) {
+            int hash = fingerprints.hash(i);
+            if (shardOf(hash, shardCount) == shard) {
+                target.add(songId, hash, fingerprints.offset(i));
+            }
+        }
+    }
+
+    /**
+     * Table of the fingerprints of one song that belong to the given shard
+     */
+    static PostingTable songTable(int songId, FingerprintBuffer fingerprints, int shard, int shardCount) {
+        PostingTable table = new PostingTable(fingerprints.size() / shardCount + 1);
+        addAll(table, songId, fingerprints, shard, shardCount);
+        return table;
+    }
+
+    // Callers hold the lock
+
+    private long[] postingsOf(int hash) {
+        long[] postings = NO_POSTINGS;
+        for (LiveSegment segment : segments) {
+            postings = concat(postings, without(segment.postings.get(hash), segment.deleted));
+        }
+        return postings;
+    }
+
+    /**
+     * Index of the oldest segment to merge, or -1 if the shard needs no compaction
+     */
+    private int compactionStart(int maxSegments, boolean persist) {
+        int n = segments.size();
+        for (LiveSegment segment : segments) {
+            if (segment.deletedPostings > MAX_DELETED_FRACTION * segment.postings.getTotalPostings()) {
+                return 0;
+            }
+        }
+
+        int from = -1;
+        if (persist) {
+            // In-memory segments (a fresh rebuild, or uploads while the directory was unwritable) go to disk
+            for (int i = 0; i < n; i++) {
+                if (!(segments.get(i).postings instanceof MappedIndexFile)) {
+                    from = i;
+                    break;
+                }
+            }
+        }
+
+        if (n > maxSegments) {
+            int start = n - 1;
+            long runSize = segments.get(start).postings.getTotalPostings();
+            while (start > 0 && segments.get(start - 1).postings.getTotalPostings() <= TIER_RATIO * runSize) {
+                start--;
+                runSize += segments.get(start).postings.getTotalPostings();
+            }
+            // Always bring the count back down to maxSegments
+            start = Math.min(start, Math.max(0, maxSegments - 1));
+            from = from < 0 ? start : Math.min(from, start);
+        }
+        return from;
+    }
+
+    /**
+     * Feed the postings of a run of segments, minus deleted songs, to a writer by ascending hash
+     */
+    private static void merge(List<LiveSegment> run, List<Set<Integer>> deleted, IndexFile.Sink sink) throws IOException {
+        int k = run.size();
+        IndexSegment.Cursor[] cursors = new IndexSegment.Cursor[k];
+        boolean[] live = new boolean[k];
+        for (int i = 0; i < k; i++) {
+            cursors[i] = run.get(i).postings.cursor();
+            live[i] = cursors[i].next();
+        }
+
+        while (true) {
+            boolean any = false;
+            int hash = 0;
+            for (int i = 0; i < k; i++) {
+                if (live[i] && (!any || cursors[i].hash() < hash)) {
+                    hash = cursors[i].hash();
+                    any = true;
+                }
+            }
+            if (!any) {
+                return;
+            }
+
+            long[] postings = NO_POSTINGS;
+            for (int i = 0; i < k; i++) {
+                if (live[i] && cursors[i].hash() == hash) {
+                    postings = concat(postings, without(cursors[i].postings(), deleted.get(i)));
+                    live[i] = cursors[i].next();
+                }
+            }
+            if (postings.length > 0) {
+                Arrays.sort(postings);
+                sink.accept(hash, postings, postings.length);
+            }
+        }
+    }
+
+    private static long[] without(long[] postings, Set<Integer> deleted) {
+        if (deleted.isEmpty() || postings.length == 0) {
+            return postings;
+        }
+        long[] kept = new long[postings.length];
+        int count = 0;
+        for (long posting : postings) {
+            if (!deleted.contains(PostingTable.songId(posting))) {
+                kept[count++] = posting;
+            }
+        }
+        return count == postings.length ? postings : Arrays.copyOf(kept, count);
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        if (a.length == 0) {
+            return b;
+        }
+        long[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    private static class LiveSegment {
+        final IndexSegment postings;
+        final Set<Integer> deleted = new HashSet<>();
+        long deletedPostings = 0;
+
+        LiveSegment(IndexSegment postings) {
+            this.postings = postings;
+        }
+
+        boolean contains(int songId) {
+            return postings.containsSong(songId) && !deleted.contains(songId);
+        }
+
+        void delete(int songId) {
+            if (contains(songId)) {
+                deleted.add(songId);
+                deletedPostings += postings.getSongPostings(songId);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.eashan.shazam_api.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash version of every song whose fingerprints predate CURRENT_HASH_VERSION (see songs.hash_version).
+ * Loaded once at startup and kept in sync by uploads, re-hashes and deletes, so matching does not
+ * query the songs table per request. The table is replaced wholesale on every change; requests keep
+ * the one they started with.
+ */
+@Service
+public class LegacyHashVersions {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile Table table = Table.EMPTY;
+
+    private final Object updateLock = new Object();
+
+    @PostConstruct
+    public void load() {
+        long startTime = System.currentTimeMillis();
+        try {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT id, hash_version FROM songs WHERE hash_version < ? ORDER BY id",
+                    FingerprintService.CURRENT_HASH_VERSION);
+            int[] songIds = new int[rows.size()];
+            int[] songVersions = new int[rows.size()];
+            for (int i = 0; i < songIds.length; i++) {
+                songIds[i] = ((Number) rows.get(i).get("id")).intValue();
+                songVersions[i] = ((Number) rows.get(i).get("hash_version")).intValue();
+            }
+            Table loaded = new Table(songIds, songVersions);
+            synchronized (updateLock) {
+                table = loaded;
+            }
+            System.out.println("🏷️ Legacy hash versions loaded: " + loaded.size() + " songs, versions " +
+                    Arrays.toString(loaded.versions) + " (" + (System.currentTimeMillis() - startTime) + " ms)");
+        } catch (Exception e) {
+            System.err.println("Error loading legacy hash versions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Record the hash version a song's fingerprints were just stored under (upload or re-hash)
+     */
+    public void songStored(int songId, int hashVersion) {
+        synchronized (updateLock) {
+            table = hashVersion < FingerprintService.CURRENT_HASH_VERSION
+                    ? table.with(songId, hashVersion) : table.without(songId);
+        }
+    }
+
+    public void songDeleted(int songId) {
+        synchronized (updateLock) {
+            table = table.without(songId);
+        }
+    }
+
+    /**
+     * The current versions, for one request. Each song's version is resolved once and then cached.
+     */
+    public Lookup lookup() {
+        return new Lookup(table);
+    }
+
+    public Map<String, Object> getStats() {
+        Table current = table;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("songs", current.size());
+        stats.put("versions", current.versions);
+        return stats;
+    }
+
+    /**
+     * Versions as one request sees them. Not thread-safe.
+     */
+    public static final class Lookup {
+        private final Table table;
+        // songId -> hash version, filled as songs show up in the postings
+        private final SongCounts resolved = new SongCounts();
+
+        Lookup(Table table) {
+            this.table = table;
+        }
+
+        public boolean isEmpty() { return table.size() == 0; }
+        public int getSongCount() { return table.size(); }
+
+        /**
+         * Distinct legacy versions, ascending
+         */
+        public int[] getVersions() { return table.versions.clone(); }
+
+        /**
+         * Hash version a song's fingerprints are stored under
+         */
+        public int versionOf(int songId) {
+            if (table.size() == 0) {
+                return FingerprintService.CURRENT_HASH_VERSION;
+            }
+            int version = resolved.get(songId);
+            if (version == 0) {
+                version = table.versionOf(songId);
+                resolved.add(songId, version);
+            }
+            return version;
+        }
+    }
+
+    /**
+     * Immutable: song ids ascending with their versions, and the distinct versions ascending
+     */
+    static final class Table {
+        static final Table EMPTY = new Table(new int[0], new int[0]);
+
+        final int[] songIds;
+        final int[] songVersions;
+        final int[] versions;
+
+        Table(int[] songIds, int[] songVersions) {
+            this.songIds = songIds;
+            this.songVersions = songVersions;
+            this.versions = Arrays.stream(songVersions).distinct().sorted().toArray();
+        }
+
+        int size() {
+            return songIds.length;
+        }
+
+        int versionOf(int songId) {
+            int index = Arrays.binarySearch(songIds, songId);
+            return index >= 0 ? songVersions[index] : FingerprintService.CURRENT_HASH_VERSION;
+        }
+
+        Table with(int songId, int version) {
+            int index = Arrays.binarySearch(songIds, songId);
+            if (index >= 0) {
+                if (songVersions[index] == version) {
+                    return this;
+                }
+                int[] changed = songVersions.clone();
+                changed[index] = version;
+                return new Table(songIds, changed);
+            }
+            int at = -index - 1;
+            int[] ids = new int[songIds.length + 1];
+            int[] vs = new int[songIds.length + 1];
+            System.arraycopy(songIds, 0, ids, 0, at);
+            System.arraycopy(songVersions, 0, vs, 0, at);
+            ids[at] = songId;
+            vs[at] = version;
+            System.arraycopy(songIds, at, ids, at + 1, songIds.length - at);
+            System.arraycopy(songVersions, at, vs, at + 1, songIds.length - at);
+            return new Table(ids, vs);
+        }
+
+        Table without(int songId) {
+            int index = Arrays.binarySearch(songIds, songId);
+            if (index < 0) {
+                return this;
+            }
+            int[] ids = new int[songIds.length - 1];
+            int[] vs = new int[songIds.length - 1];
+            System.arraycopy(songIds, 0, ids, 0, index);
+            System.arraycopy(songVersions, 0, vs, 0, index);
+            System.arraycopy(songIds, index + 1, ids, index, ids.length - index);
+            System.arraycopy(songVersions, index + 1, vs, index, vs.length - index);
+            return new Table(ids, vs);
+        }
+    }
+}
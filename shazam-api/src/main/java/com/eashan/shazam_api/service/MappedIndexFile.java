@@ -0,0 +1,263 @@
+package com.eashan.shazam_api.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only view of an IndexFile snapshot mapped with FileChannel.map.
+ * Only the sparse key directory and the song table are copied to the heap; keys and postings
+ * are decoded from the mapping on demand, so the page cache holds the index instead of the heap.
+ * Safe for concurrent readers (absolute reads only). Limited to 2 GB per file by MappedByteBuffer.
+ */
+class MappedIndexFile implements IndexSegment {
+
+    private static final long[] NO_POSTINGS = new long[0];
+
+    private final Path path;
+    private final ByteBuffer buffer;
+
+    private final int hashCount;
+    private final long totalPostings;
+    private final int postingsPosition;
+    private final int keysPosition;
+
+    // Sparse key directory: first hash of every block and where its keys and postings start
+    private final int[] blockHashes;
+    private final int[] blockKeyPositions;
+    private final int[] blockPostingPositions;
+
+    // Song table, sorted by song id
+    private final int[] songIds;
+    private final int[] songPostings;
+
+    private MappedIndexFile(Path path, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+
+        if (buffer.capacity() < IndexFile.HEADER_SIZE || buffer.getInt(0) != IndexFile.MAGIC) {
+            throw new IOException("Not a fingerprint index file: " + path);
+        }
+        if (buffer.getInt(4) != IndexFile.VERSION) {
+            throw new IOException("Unsupported fingerprint index version " + buffer.getInt(4) + ": " + path);
+        }
+
+        hashCount = buffer.getInt(16);
+        int songCount = buffer.getInt(20);
+        totalPostings = buffer.getLong(24);
+        postingsPosition = (int) buffer.getLong(32);
+        keysPosition = (int) buffer.getLong(40);
+        int directoryPosition = (int) buffer.getLong(48);
+        int songsPosition = (int) buffer.getLong(56);
+
+        int blocks = (hashCount + IndexFile.DIRECTORY_INTERVAL - 1) / IndexFile.DIRECTORY_INTERVAL;
+        if (songsPosition != directoryPosition + blocks * IndexFile.DIRECTORY_ENTRY_SIZE
+                || buffer.capacity() != songsPosition + songCount * 8) {
+            throw new IOException("Truncated fingerprint index file: " + path);
+        }
+
+        blockHashes = new int[blocks];
+        blockKeyPositions = new int[blocks];
+        blockPostingPositions = new int[blocks];
+        for (int b = 0, p = directoryPosition; b < blocks; b++, p += IndexFile.DIRECTORY_ENTRY_SIZE) {
+            blockHashes[b] = buffer.getInt(p);
+            blockKeyPositions[b] = keysPosition + (int) buffer.getLong(p + 4);
+            blockPostingPositions[b] = postingsPosition + (int) buffer.getLong(p + 12);
+        }
+
+        songIds = new int[songCount];
+        songPostings = new int[songCount];
+        for (int i = 0, p = songsPosition; i < songCount; i++, p += 8) {
+            songIds[i] = buffer.getInt(p);
+            songPostings[i] = buffer.getInt(p + 4);
+        }
+    }
+
+    static MappedIndexFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Fingerprint index file exceeds 2 GB: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedIndexFile(path, mapped);
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getSizeBytes() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public int getDistinctHashes() {
+        return hashCount;
+    }
+
+    @Override
+    public long getTotalPostings() {
+        return totalPostings;
+    }
+
+    @Override
+    public int getSongCount() {
+        return songIds.length;
+    }
+
+    @Override
+    public boolean containsSong(int songId) {
+        return Arrays.binarySearch(songIds, songId) >= 0;
+    }
+
+    @Override
+    public int getSongPostings(int songId) {
+        int i = Arrays.binarySearch(songIds, songId);
+        return i < 0 ? 0 : songPostings[i];
+    }
+
+    /**
+     * Postings stored for a hash, sorted by (songId, offset); empty if the hash is unknown
+     */
+    @Override
+    public long[] get(int hash) {
+        // Last block whose first hash is <= hash
+        int block = Arrays.binarySearch(blockHashes, hash);
+        if (block < 0) {
+            block = -block - 2;
+            if (block < 0) {
+                return NO_POSTINGS;
+            }
+        }
+
+        VarintReader keys = new VarintReader(blockKeyPositions[block]);
+        int postingPosition = blockPostingPositions[block];
+        int key = blockHashes[block];
+        int end = Math.min(hashCount, (block + 1) * IndexFile.DIRECTORY_INTERVAL);
+
+        for (int k = block * IndexFile.DIRECTORY_INTERVAL; k < end; k++) {
+            key += keys.next();
+            int count = keys.next();
+            int bytes = keys.next();
+            if (key == hash) {
+                return decodePostings(new VarintReader(postingPosition), count);
+            }
+            if (key > hash) {
+                break;
+            }
+            postingPosition += bytes;
+        }
+        return NO_POSTINGS;
+    }
+
+    @Override
+    public IndexSegment.Cursor cursor() {
+        VarintReader keys = new VarintReader(keysPosition);
+        VarintReader postings = new VarintReader(postingsPosition);
+        return new IndexSegment.Cursor() {
+            private int index = -1;
+            private int key;
+            private long[] list;
+
+            @Override
+            public boolean next() {
+                if (index + 1 >= hashCount) {
+                    return false;
+                }
+                index++;
+                if (index % IndexFile.DIRECTORY_INTERVAL == 0) {
+                    key = blockHashes[index / IndexFile.DIRECTORY_INTERVAL];
+                }
+                key += keys.next();
+                int count = keys.next();
+                keys.next();
+                list = decodePostings(postings, count);
+                return true;
+            }
+
+            @Override
+            public int hash() { return key; }
+
+            @Override
+            public long[] postings() { return list; }
+        };
+    }
+
+    /**
+     * Decode a posting list block by block: one header, then two bit-packed columns per POSTING_BLOCK postings
+     */
+    private long[] decodePostings(VarintReader reader, int count) {
+        long[] postings = new long[count];
+        int[] songDeltas = new int[Math.min(count, IndexFile.POSTING_BLOCK)];
+        int[] offsets = new int[songDeltas.length];
+
+        for (int from = 0; from < count; from += IndexFile.POSTING_BLOCK) {
+            int length = Math.min(IndexFile.POSTING_BLOCK, count - from);
+            int songId = reader.next();
+            int minOffset = reader.next();
+            int songBits = buffer.get(reader.position++);
+            int offsetBits = buffer.get(reader.position++);
+            reader.position = unpack(reader.position, length, songBits, songDeltas);
+            reader.position = unpack(reader.position, length, offsetBits, offsets);
+
+            for (int i = 0; i < length; i++) {
+                songId += songDeltas[i];
+                postings[from + i] = PostingTable.pack(songId, minOffset + offsets[i]);
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * Read count values of the given bit width starting at position; returns the position after them
+     */
+    private int unpack(int position, int count, int bits, int[] values) {
+        if (bits == 0) {
+            Arrays.fill(values, 0, count, 0);
+            return position;
+        }
+        long mask = (1L << bits) - 1;
+        long buffered = 0;
+        int available = 0;
+        for (int i = 0; i < count; i++) {
+            while (available < bits) {
+                buffered |= (buffer.get(position++) & 0xFFL) << available;
+                available += 8;
+            }
+            values[i] = (int) (buffered & mask);
+            buffered >>>= bits;
+            available -= bits;
+        }
+        return position;
+    }
+
+    /**
+     * Varint reader over the mapping; one per decode so readers never share a position
+     */
+    private class VarintReader {
+        private int position;
+
+        VarintReader(int position) {
+            this.position = position;
+        }
+
+        int next() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.eashan.shazam_api.service;
+
+import com.eashan.shazam_api.exceptions.MatchRejectedException;
+import com.eashan.shazam_api.exceptions.MatchTimeoutException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dedicated platform-thread pools for CPU-bound fingerprinting: one for match requests, one for song
+ * uploads and re-hashes.
+ * Request threads are virtual and only wait here, so decoding, FFT and voting stay bounded by the
+ * core count instead of the number of concurrent requests. At most `threads` jobs run at once and
+ * `queue-capacity` more wait; anything beyond that is shed immediately with MatchRejectedException (429).
+ * Each request has a deadline that includes its queue wait; missing it gives MatchTimeoutException (503).
+ * A request that runs several jobs (the vote batches of a streaming upload) opens a Session: its jobs
+ * share one deadline, and the submitted/completed/shed counters count the request once.
+ * Full-track ingestion (uploads and re-hashes) takes minutes rather than milliseconds, so it runs on its
+ * own small pool and queue with a longer deadline and cannot take the workers /match needs.
+ * A job that misses its deadline is interrupted, and run() waits up to `stop-grace-ms` for it to stop,
+ * so the pool slot is free again and the job no longer reads the request. Jobs stop cooperatively:
+ * decoding and vote batches check the interrupt flag. A job stuck in work that ignores interrupts
+ * (a blocking read, a JDBC call) is left behind after the grace period and counted as leaked.
+ */
+@Service
+public class MatchExecutor {
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int ABANDONED = 2;
+    private static final int STOPPED = 3;
+    private static final int LEAKED = 4;
+
+    // 0 = one thread per available core
+    @Value("${match.executor.threads:0}")
+    private int threads;
+
+    @Value("${match.executor.queue-capacity:16}")
+    private int queueCapacity;
+
+    @Value("${match.executor.deadline-ms:30000}")
+    private long deadlineMs;
+
+    // 0 = a quarter of the available cores (at least one)
+    @Value("${match.executor.ingest-threads:0}")
+    private int ingestThreads;
+
+    @Value("${match.executor.ingest-queue-capacity:4}")
+    private int ingestQueueCapacity;
+
+    @Value("${match.executor.ingest-deadline-ms:600000}")
+    private long ingestDeadlineMs;
+
+    @Value("${match.executor.stop-grace-ms:2000}")
+    private long stopGraceMs;
+
+    private ThreadPoolExecutor executor;
+    private ThreadPoolExecutor ingestExecutor;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong leaked = new AtomicLong();
+    private final AtomicInteger leakedRunning = new AtomicInteger();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int poolSize = threads > 0 ? threads : cores;
+        int ingestPoolSize = ingestThreads > 0 ? ingestThreads : Math.max(1, cores / 4);
+        executor = newPool("match-", poolSize, queueCapacity);
+        ingestExecutor = newPool("ingest-", ingestPoolSize, ingestQueueCapacity);
+        System.out.println("🎛️ Match executor: " + poolSize + " threads, queue " + queueCapacity +
+                ", deadline " + deadlineMs + " ms; ingest " + ingestPoolSize + " threads, queue " +
+                ingestQueueCapacity + ", deadline " + ingestDeadlineMs + " ms");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        ingestExecutor.shutdownNow();
+    }
+
+    private static ThreadPoolExecutor newPool(String namePrefix, int poolSize, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Run a match on the pool and wait for its result, within the request deadline.
+     * Exceptions thrown by the task are rethrown as they are.
+     */
+    public <T> T run(Callable<T> task) throws Exception {
+        return run(executor, task, deadlineFromNow(deadlineMs), deadlineMs, null);
+    }
+
+    /**
+     * Fingerprint a full track on the ingestion pool, within the ingestion deadline
+     */
+    public <T> T runIngest(Callable<T> task) throws Exception {
+        return run(ingestExecutor, task, deadlineFromNow(ingestDeadlineMs), ingestDeadlineMs, null);
+    }
+
+    /**
+     * Start a request that will run several jobs on the match pool. Its deadline starts now.
+     */
+    public Session openSession() {
+        return new Session(deadlineFromNow(deadlineMs));
+    }
+
+    /**
+     * One request made of several match jobs, run one at a time by the request thread. Every job
+     * must finish by the deadline taken when the session was opened; time between jobs counts too.
+     * The request counts as submitted with its first accepted job and as completed on close,
+     * unless one of its jobs was shed. Not thread-safe.
+     */
+    public final class Session implements AutoCloseable {
+        private final long deadline;
+        private boolean accepted = false;
+        private boolean shed = false;
+
+        private Session(long deadline) {
+            this.deadline = deadline;
+        }
+
+        public <T> T run(Callable<T> task) throws Exception {
+            return MatchExecutor.this.run(executor, task, deadline, deadlineMs, this);
+        }
+
+        @Override
+        public void close() {
+            if (accepted && !shed) {
+                completed.incrementAndGet();
+            }
+        }
+    }
+
+    private static long deadlineFromNow(long deadlineMs) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+    }
+
+    /**
+     * Run a job by an absolute deadline. Without a session every job is its own request in the stats.
+     */
+    private <T> T run(ThreadPoolExecutor executor, Callable<T> task, long deadline, long deadlineMs,
+                      Session session) throws Exception {
+        long submittedAt = System.nanoTime();
+        if (submittedAt - deadline >= 0) {
+            countShed(session, timedOut);
+            throw new MatchTimeoutException("Request did not finish within " + deadlineMs + " ms");
+        }
+        // QUEUED -> RUNNING when a worker picks the job up, or QUEUED -> ABANDONED if the caller gives up first.
+        // RUNNING -> STOPPED when the job ends, or RUNNING -> LEAKED if the caller stops waiting for it.
+        AtomicInteger state = new AtomicInteger(QUEUED);
+        CountDownLatch stopped = new CountDownLatch(1);
+
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                if (!state.compareAndSet(QUEUED, RUNNING)) {
+                    return null;
+                }
+                try {
+                    long waited = System.nanoTime() - submittedAt;
+                    started.incrementAndGet();
+                    totalWaitNanos.addAndGet(waited);
+                    maxWaitNanos.accumulateAndGet(waited, Math::max);
+                    // Nobody is waiting for requests that expired in the queue
+                    if (System.nanoTime() - deadline >= 0) {
+                        throw new MatchTimeoutException("Request expired after waiting " +
+                                TimeUnit.NANOSECONDS.toMillis(waited) + " ms in the queue");
+                    }
+                    return task.call();
+                } finally {
+                    if (state.getAndSet(STOPPED) == LEAKED) {
+                        leakedRunning.decrementAndGet();
+                    }
+                    stopped.countDown();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            countShed(session, rejected);
+            throw new MatchRejectedException("Too many audio requests in progress, please retry shortly");
+        }
+        if (session == null) {
+            submitted.incrementAndGet();
+        } else if (!session.accepted) {
+            session.accepted = true;
+            submitted.incrementAndGet();
+        }
+
+        try {
+            T result = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            countCompleted(session);
+            return result;
+        } catch (TimeoutException e) {
+            abandon(executor, future, state, stopped);
+            countShed(session, timedOut);
+            throw new MatchTimeoutException("Request did not finish within " + deadlineMs + " ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MatchTimeoutException timeout) {
+                countShed(session, timedOut);
+                throw timeout;
+            }
+            countCompleted(session);
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            abandon(executor, future, state, stopped);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    private void countCompleted(Session session) {
+        // Sessions count as completed when they are closed
+        if (session == null) {
+            completed.incrementAndGet();
+        }
+    }
+
+    private static void countShed(Session session, AtomicLong counter) {
+        if (session == null) {
+            counter.incrementAndGet();
+        } else if (!session.shed) {
+            session.shed = true;
+            counter.incrementAndGet();
+        }
+    }
+
+    /**
+     * Give up on a job: drop it from the queue if no worker has it yet, otherwise interrupt it
+     * and wait up to the grace period for it to stop
+     */
+    private void abandon(ThreadPoolExecutor executor, Future<?> future, AtomicInteger state, CountDownLatch stopped) {
+        if (state.compareAndSet(QUEUED, ABANDONED)) {
+            future.cancel(false);
+            executor.remove((Runnable) future);
+            return;
+        }
+        future.cancel(true);
+        long graceEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stopGraceMs);
+        boolean interrupted = false;
+        boolean done = false;
+        while (true) {
+            try {
+                done = stopped.await(Math.max(0, graceEnd - System.nanoTime()), TimeUnit.NANOSECONDS);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (!done && state.compareAndSet(RUNNING, LEAKED)) {
+            leaked.incrementAndGet();
+            leakedRunning.incrementAndGet();
+            System.out.println("⚠️ Match job still running " + stopGraceMs + " ms after cancellation, leaving it behind");
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Pool load and shedding counters. Request counters count a session once; queue waits are per job.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long startedCount = started.get();
+        stats.put("threads", executor.getMaximumPoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("deadlineMs", deadlineMs);
+        stats.put("ingestThreads", ingestExecutor.getMaximumPoolSize());
+        stats.put("ingestActive", ingestExecutor.getActiveCount());
+        stats.put("ingestQueueDepth", ingestExecutor.getQueue().size());
+        stats.put("ingestQueueCapacity", ingestQueueCapacity);
+        stats.put("ingestDeadlineMs", ingestDeadlineMs);
+        stats.put("stopGraceMs", stopGraceMs);
+        stats.put("submitted", submitted.get());
+        stats.put("completed", completed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("timedOut", timedOut.get());
+        stats.put("leaked", leaked.get());
+        stats.put("leakedRunning", leakedRunning.get());
+        stats.put("avgQueueWaitMs", startedCount == 0 ? 0.0 : totalWaitNanos.get() / 1e6 / startedCount);
+        stats.put("maxQueueWaitMs", maxWaitNanos.get() / 1e6);
+        return stats;
+    }
+}
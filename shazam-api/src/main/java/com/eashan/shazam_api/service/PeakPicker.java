@@ -0,0 +1,108 @@
+package com.eashan.shazam_api.service;
+
+import java.util.Arrays;
+
+/**
+ * Picks the strongest spectral peaks of a frame: bins above a threshold that are strictly greater
+ * than every other bin within +-neighborhood, strongest first (ties by ascending bin).
+ * Neighbourhood maxima come from a van Herk/Gil-Werman sliding max, so a frame costs O(n)
+ * regardless of the neighbourhood size, and the top peaks are kept in a fixed-size ranked
+ * buffer instead of sorting every candidate. Not thread-safe: keep one per thread.
+ */
+class PeakPicker {
+
+    private final int neighborhood;
+    private final int minBin;
+    private final int maxBin;
+    private final double threshold;
+
+    // Running maxima within blocks of neighborhood bins, from the block start and from the block end
+    private double[] prefix = new double[0];
+    private double[] suffix = new double[0];
+
+    // Current top peaks, in rank order
+    private final int[] bins;
+    private final int[] scores;
+    private int count;
+
+    PeakPicker(int neighborhood, int minBin, int maxBin, double threshold, int peaks) {
+        if (minBin < neighborhood) {
+            throw new IllegalArgumentException("minBin must leave room for a full neighbourhood below it");
+        }
+        this.neighborhood = neighborhood;
+        this.minBin = minBin;
+        this.maxBin = maxBin;
+        this.threshold = threshold;
+        this.bins = new int[peaks];
+        this.scores = new int[peaks];
+    }
+
+    /**
+     * Peak bins of magnitudes[minBin, min(maxBin, length - neighborhood)), strongest first
+     */
+    int[] pick(double[] magnitudes) {
+        int end = Math.min(maxBin, magnitudes.length - neighborhood);
+        count = 0;
+        if (end <= minBin) {
+            return new int[0];
+        }
+        // Furthest bin any candidate's neighbourhood reaches
+        int span = end + neighborhood;
+        slidingMax(magnitudes, span);
+
+        for (int i = minBin; i < end; i++) {
+            double magnitude = magnitudes[i];
+            // Strict local max: above the max of the bins just below and just above
+            if (magnitude < threshold
+                    || magnitude <= windowMax(i - neighborhood)
+                    || magnitude <= windowMax(i + 1)) {
+                continue;
+            }
+            offer(i, (int) (magnitude * 10000));
+        }
+        return Arrays.copyOf(bins, count);
+    }
+
+    private void slidingMax(double[] magnitudes, int span) {
+        if (prefix.length < span) {
+            prefix = new double[span];
+            suffix = new double[span];
+        }
+        for (int start = 0; start < span; start += neighborhood) {
+            int stop = Math.min(span, start + neighborhood);
+            prefix[start] = magnitudes[start];
+            for (int i = start + 1; i < stop; i++) {
+                prefix[i] = Math.max(prefix[i - 1], magnitudes[i]);
+            }
+            suffix[stop - 1] = magnitudes[stop - 1];
+            for (int i = stop - 2; i >= start; i--) {
+                suffix[i] = Math.max(suffix[i + 1], magnitudes[i]);
+            }
+        }
+    }
+
+    /**
+     * Max of magnitudes[from, from + neighborhood): the suffix of one block and the prefix of the next
+     */
+    private double windowMax(int from) {
+        return Math.max(suffix[from], prefix[from + neighborhood - 1]);
+    }
+
+    /**
+     * Insert a candidate into the ranked buffer. Candidates arrive by ascending bin, so an equal
+     * score goes after the ones already there, which keeps ties in bin order.
+     */
+    private void offer(int bin, int score) {
+        if (count == bins.length && (count == 0 || score <= scores[count - 1])) {
+            return;
+        }
+        int position = count < bins.length ? count++ : count - 1;
+        while (position > 0 && scores[position - 1] < score) {
+            bins[position] = bins[position - 1];
+            scores[position] = scores[position - 1];
+            position--;
+        }
+        bins[position] = bin;
+        scores[position] = score;
+    }
+}
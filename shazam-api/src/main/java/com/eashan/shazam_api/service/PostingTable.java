@@ -0,0 +1,214 @@
+package com.eashan.shazam_api.service;
+
+import java.util.Arrays;
+
+/**
+ * Inverted fingerprint table: hash -> posting list of packed (songId, offset) longs.
+ * Uses open addressing over primitive arrays so no boxed keys or row maps are created.
+ * Not thread-safe; once handed to an IndexShard as a segment it is only read.
+ */
+class PostingTable implements IndexSegment {
+
+    private static final long[] NO_POSTINGS = new long[0];
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final int INITIAL_LIST_SIZE = 4;
+
+    // Open addressing table: keys[slot] holds the hash, lists[slot] holds listId + 1 (0 = empty slot)
+    private int[] keys;
+    private int[] lists;
+    private int mask;
+
+    // Posting lists, indexed by listId
+    private long[][] postings;
+    private int[] sizes;
+    private int listCount = 0;
+
+    // Posting count per song id, used to detect already indexed songs
+    private final SongCounts songPostings = new SongCounts();
+    private long totalPostings = 0;
+
+    PostingTable() {
+        this(INITIAL_CAPACITY / 2);
+    }
+
+    /**
+     * Table sized for about expectedHashes distinct hashes, e.g. one song's share of a shard
+     */
+    PostingTable(int expectedHashes) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedHashes) * 2 - 1) << 1;
+        keys = new int[capacity];
+        lists = new int[capacity];
+        mask = capacity - 1;
+        postings = new long[capacity / 2][];
+        sizes = new int[capacity / 2];
+    }
+
+    static long pack(int songId, int offset) {
+        return ((long) songId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    static int songId(long posting) {
+        return (int) (posting >>> 32);
+    }
+
+    static int offset(long posting) {
+        return (int) posting;
+    }
+
+    void add(int songId, int hash, int offset) {
+        int listId = listFor(hash, true);
+        long[] list = postings[listId];
+        int size = sizes[listId];
+        if (size == list.length) {
+            list = Arrays.copyOf(list, size * 2);
+            postings[listId] = list;
+        }
+        list[size] = pack(songId, offset);
+        sizes[listId] = size + 1;
+
+        songPostings.add(songId, 1);
+        totalPostings++;
+    }
+
+    /**
+     * Copy of the postings stored for a hash (empty if the hash is unknown)
+     */
+    @Override
+    public long[] get(int hash) {
+        int listId = listFor(hash, false);
+        if (listId < 0 || sizes[listId] == 0) {
+            return NO_POSTINGS;
+        }
+        return Arrays.copyOf(postings[listId], sizes[listId]);
+    }
+
+    /**
+     * Hashes with at least one posting, ascending
+     */
+    int[] sortedHashes() {
+        int[] hashes = new int[listCount];
+        int count = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (lists[slot] != 0 && sizes[lists[slot] - 1] > 0) {
+                hashes[count++] = keys[slot];
+            }
+        }
+        hashes = Arrays.copyOf(hashes, count);
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    @Override
+    public boolean containsSong(int songId) {
+        return songPostings.get(songId) > 0;
+    }
+
+    /**
+     * Drop every posting of a song. Scans all lists, so it is meant for rare admin deletes.
+     */
+    void removeSong(int songId) {
+        if (!containsSong(songId)) {
+            return;
+        }
+        for (int listId = 0; listId < listCount; listId++) {
+            long[] list = postings[listId];
+            int size = sizes[listId];
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (songId(list[i]) != songId) {
+                    list[kept++] = list[i];
+                }
+            }
+            sizes[listId] = kept;
+        }
+        totalPostings -= songPostings.clear(songId);
+    }
+
+    @Override
+    public int getSongPostings(int songId) {
+        return songPostings.get(songId);
+    }
+
+    @Override
+    public long getTotalPostings() { return totalPostings; }
+
+    @Override
+    public int getDistinctHashes() { return listCount; }
+
+    @Override
+    public int getSongCount() { return songPostings.size(); }
+
+    @Override
+    public IndexSegment.Cursor cursor() {
+        int[] hashes = sortedHashes();
+        return new IndexSegment.Cursor() {
+            private int index = -1;
+
+            @Override
+            public boolean next() {
+                return ++index < hashes.length;
+            }
+
+            @Override
+            public int hash() { return hashes[index]; }
+
+            @Override
+            public long[] postings() {
+                long[] list = get(hashes[index]);
+                Arrays.sort(list);
+                return list;
+            }
+        };
+    }
+
+    private int listFor(int hash, boolean create) {
+        int slot = mix(hash) & mask;
+        while (lists[slot] != 0) {
+            if (keys[slot] == hash) {
+                return lists[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!create) {
+            return -1;
+        }
+
+        if (listCount == postings.length) {
+            postings = Arrays.copyOf(postings, listCount * 2);
+            sizes = Arrays.copyOf(sizes, listCount * 2);
+        }
+        int listId = listCount++;
+        postings[listId] = new long[INITIAL_LIST_SIZE];
+        keys[slot] = hash;
+        lists[slot] = listId + 1;
+
+        // Keep the load factor at or below 0.5
+        if (listCount * 2 > keys.length) {
+            resize();
+        }
+        return listId;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldLists = lists;
+        keys = new int[oldKeys.length * 2];
+        lists = new int[oldLists.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldLists[i] != 0) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (lists[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                lists[slot] = oldLists[i];
+            }
+        }
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,185 @@
+package com.eashan.shazam_api.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming polyphase resampler: a sample sink that converts mono samples from the source rate
+ * to a fixed target rate and forwards them downstream.
+ * The ratio is reduced to up/down; a windowed-sinc low-pass at up * sourceRate is split into
+ * up phases, so each output sample is one short dot product over the latest input samples
+ * and the zero-stuffed signal is never built. Filter delay is compensated, so output
+ * sample n lines up with time n / targetRate of the input.
+ */
+class Resampler implements AudioProcessor.SampleSink {
+
+    // Sinc zero crossings per side, counted at the lower of the two rates
+    private static final int ZERO_CROSSINGS = 8;
+    // Cutoff as a fraction of the lower Nyquist frequency
+    private static final double ROLLOFF = 0.9;
+    private static final int OUTPUT_CHUNK = 4096;
+
+    // Phase tables by (up, down); the same few source rates come up over and over
+    private static final Map<Long, double[][]> FILTERS = new ConcurrentHashMap<>();
+
+    private final float targetRate;
+    private final AudioProcessor.SampleSink downstream;
+
+    private boolean passThrough;
+    private int up;
+    private int down;
+    private long center;
+    private double[][] phases;
+    private int taps;
+
+    // Input samples still needed; buffer[0] is input sample bufferStart
+    private double[] buffer = new double[OUTPUT_CHUNK];
+    private int buffered = 0;
+    private long bufferStart = 0;
+    private long inputCount = 0;
+    private long outputCount = 0;
+
+    private final double[] output = new double[OUTPUT_CHUNK];
+    private int outputFilled = 0;
+
+    Resampler(float targetRate, AudioProcessor.SampleSink downstream) {
+        this.targetRate = targetRate;
+        this.downstream = downstream;
+    }
+
+    @Override
+    public void start(float sampleRate, int channels) {
+        int from = Math.round(sampleRate);
+        int to = Math.round(targetRate);
+        passThrough = from == to;
+        if (!passThrough) {
+            int gcd = gcd(from, to);
+            up = to / gcd;
+            down = from / gcd;
+            phases = FILTERS.computeIfAbsent(((long) up << 32) | down, key -> design(up, down));
+            taps = phases[0].length;
+            center = ((long) taps * up - 1) / 2;
+            System.out.println("🔄 Resampling " + from + " Hz -> " + to + " Hz (" + up + "/" + down +
+                    ", " + taps + " taps per phase)");
+        }
+        downstream.start(targetRate, channels);
+    }
+
+    @Override
+    public void accept(double[] samples, int count) {
+        if (passThrough) {
+            downstream.accept(samples, count);
+            return;
+        }
+        if (buffered + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffered + count, buffer.length * 2));
+        }
+        System.arraycopy(samples, 0, buffer, buffered, count);
+        buffered += count;
+        inputCount += count;
+
+        produce(false);
+        flushOutput();
+
+        // Drop input that no later output reaches back to
+        long keepFrom = Math.max(0, latestInput(outputCount) - taps + 1);
+        int drop = (int) Math.min(buffered, keepFrom - bufferStart);
+        if (drop > 0) {
+            System.arraycopy(buffer, drop, buffer, 0, buffered - drop);
+            buffered -= drop;
+            bufferStart += drop;
+        }
+    }
+
+    /**
+     * Emit the outputs that still depend on input past the end, treating it as silence
+     */
+    @Override
+    public void end() {
+        if (!passThrough) {
+            produce(true);
+            flushOutput();
+        }
+        downstream.end();
+    }
+
+    @Override
+    public boolean isDone() {
+        return downstream.isDone();
+    }
+
+    private void produce(boolean draining) {
+        long total = (inputCount * up + down - 1) / down;
+        while (outputCount < total) {
+            long t = outputCount * down + center;
+            long latest = t / up;
+            if (!draining && latest >= inputCount) {
+                return;
+            }
+            double[] h = phases[(int) (t % up)];
+            int base = (int) (latest - bufferStart);
+            // Taps before the first sample or past the last one see silence
+            int first = (int) Math.max(0, latest - (inputCount - 1));
+            int last = Math.min(taps, base + 1);
+            double acc = 0;
+            for (int k = first; k < last; k++) {
+                acc += h[k] * buffer[base - k];
+            }
+            output[outputFilled++] = acc;
+            outputCount++;
+            if (outputFilled == output.length) {
+                flushOutput();
+            }
+        }
+    }
+
+    private long latestInput(long outputIndex) {
+        return (outputIndex * down + center) / up;
+    }
+
+    private void flushOutput() {
+        if (outputFilled > 0) {
+            downstream.accept(output, outputFilled);
+            outputFilled = 0;
+        }
+    }
+
+    /**
+     * Blackman-windowed sinc at up * sourceRate, split into up phases of equal length.
+     * phases[p][k] is the prototype tap p + k * up; each phase is scaled to unit DC gain.
+     */
+    private static double[][] design(int up, int down) {
+        double cutoff = ROLLOFF * 0.5 / Math.max(up, down); // cycles per high-rate sample
+        int taps = (int) Math.ceil(ZERO_CROSSINGS / cutoff / up);
+        int length = taps * up;
+        double middle = (length - 1) / 2.0;
+
+        double[][] phases = new double[up][taps];
+        for (int p = 0; p < up; p++) {
+            double sum = 0;
+            for (int k = 0; k < taps; k++) {
+                int j = p + k * up;
+                double x = j - middle;
+                double sinc = x == 0 ? 1.0 : Math.sin(2 * Math.PI * cutoff * x) / (2 * Math.PI * cutoff * x);
+                double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * j / (length - 1))
+                        + 0.08 * Math.cos(4 * Math.PI * j / (length - 1));
+                phases[p][k] = sinc * window;
+                sum += phases[p][k];
+            }
+            for (int k = 0; k < taps; k++) {
+                phases[p][k] /= sum;
+            }
+        }
+        return phases;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,120 @@
+package com.eashan.shazam_api.service;
+
+import java.util.Arrays;
+
+/**
+ * Posting count per song id, sized by the number of songs rather than the largest song id.
+ * Open addressing over primitive arrays; a cleared song keeps its slot with a zero count.
+ * Not thread-safe.
+ */
+class SongCounts {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // keys[slot] holds songId + 1 (0 = empty slot)
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    private int used = 0;
+    private int songCount = 0;
+
+    /**
+     * Add to a song's count; returns the count before
+     */
+    int add(int songId, int delta) {
+        int slot = slotOf(songId, true);
+        int before = counts[slot];
+        counts[slot] = before + delta;
+        if (before == 0 && delta > 0) {
+            songCount++;
+        }
+        return before;
+    }
+
+    int get(int songId) {
+        int slot = slotOf(songId, false);
+        return slot < 0 ? 0 : counts[slot];
+    }
+
+    /**
+     * Zero a song's count; returns the count it had
+     */
+    int clear(int songId) {
+        int slot = slotOf(songId, false);
+        if (slot < 0 || counts[slot] == 0) {
+            return 0;
+        }
+        int before = counts[slot];
+        counts[slot] = 0;
+        songCount--;
+        return before;
+    }
+
+    /**
+     * Number of songs with a count above zero
+     */
+    int size() {
+        return songCount;
+    }
+
+    /**
+     * Ids of the songs with a count above zero, ascending
+     */
+    int[] sortedSongIds() {
+        int[] songIds = new int[songCount];
+        int n = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0 && counts[slot] > 0) {
+                songIds[n++] = keys[slot] - 1;
+            }
+        }
+        Arrays.sort(songIds);
+        return songIds;
+    }
+
+    private int slotOf(int songId, boolean create) {
+        int key = songId + 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!create) {
+            return -1;
+        }
+        keys[slot] = key;
+        used++;
+
+        // Keep the load factor at or below 0.5
+        if (used * 2 > keys.length) {
+            resize();
+            return slotOf(songId, false);
+        }
+        return slot;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -4,23 +4,55 @@ import org.springframework.stereotype.Service;
 import com.eashan.shazam_api.model.Song;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.stream.Collectors;
 
 
 @Service
 public class SongService {
 
+    // Upper bound on placeholders per IN (...) query
+    private static final int HASH_LOOKUP_CHUNK_SIZE = 1000;
+    private static final int SONG_CACHE_SIZE = 2048;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
-    public Song findMatchingSong(List<int[]> fingerprints) {
+    @Autowired
+    private FingerprintIndex fingerprintIndex;
+
+    @Autowired
+    private HashStopList hashStopList;
+
+    // Song metadata by id, least recently used entries evicted first
+    private final Map<Long, Song> songCache = Collections.synchronizedMap(
+            new LinkedHashMap<Long, Song>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Song> eldest) {
+                    return size() > SONG_CACHE_SIZE;
+                }
+            });
+
+    public Song findMatchingSong(FingerprintBuffer fingerprints) {
         // You can improve this logic with a better matching algorithm later
-        for (int[] fp : fingerprints) {
-            int hash = fp[0];
+        for (int i = 0; i < fingerprints.size(); i++) {
+            int hash = fingerprints.hash(i);
 
             String sql = "SELECT s.id, s.title, s.artist, s.album, s.cover_path, s.song_url FROM songs s " +
                     "JOIN fingerprints f ON s.id = f.song_id " +
@@ -100,44 +132,107 @@ public class SongService {
     }
 
     /**
-     * Find a song by its ID
+     * Get the postings of many hashes at once (e.g. every hash of a clip).
+     * Served from the in-memory index when it is loaded, otherwise with chunked IN (...) queries.
+     * Stop-listed hashes are not looked up and come back without postings.
      */
-    public Song findById(Long songId) {
-        try {
-            String sql = "SELECT id, title, artist, album, cover_path, song_url FROM songs WHERE id = ?";
-
-            List<Map<String, Object>> result = jdbcTemplate.queryForList(sql, songId);
+    public FingerprintMatches getMatchingFingerprints(int[] hashes) {
+        int[] lookupHashes = hashStopList.removeStopped(FingerprintMatches.distinctSorted(hashes));
+        FingerprintMatches.Builder builder = new FingerprintMatches.Builder(lookupHashes);
 
-            if (!result.isEmpty()) {
-                Map<String, Object> row = result.get(0);
-                Song song = new Song();
+        if (fingerprintIndex.collectPostings(builder)) {
+            return builder.build();
+        }
 
-                // Handle different possible data types for id
-                Object idObj = row.get("id");
-                if (idObj instanceof Integer) {
-                    song.setId((Integer) idObj);
-                } else if (idObj instanceof Long) {
-                    song.setId(((Long) idObj).intValue());
+        int[] distinctHashes = builder.getHashes();
+        try {
+            for (int from = 0; from < distinctHashes.length; from += HASH_LOOKUP_CHUNK_SIZE) {
+                int to = Math.min(from + HASH_LOOKUP_CHUNK_SIZE, distinctHashes.length);
+                Object[] args = new Object[to - from];
+                for (int i = from; i < to; i++) {
+                    args[i - from] = distinctHashes[i];
                 }
 
-                song.setTitle((String) row.get("title"));
-                song.setArtist((String) row.get("artist"));
-                song.setAlbum((String) row.get("album"));
+                // Chunks are in ascending hash order, so ORDER BY keeps rows grouped for the builder
+                String placeholders = String.join(",", Collections.nCopies(args.length, "?"));
+                String sql = "SELECT hash, song_id, offset FROM fingerprints WHERE hash IN (" + placeholders + ") ORDER BY hash";
 
-                String coverPath = (String) row.get("cover_path");
-                song.setCoverPath(coverPath);
+                jdbcTemplate.query(sql, rs -> {
+                    builder.add(rs.getInt(1), rs.getInt(2), rs.getInt(3));
+                }, args);
+            }
+        } catch (Exception e) {
+            System.err.println("Error getting matching fingerprints for " + distinctHashes.length + " hashes: " + e.getMessage());
+        }
 
-                // Automatically generate URL to cover image
-                if (coverPath != null && !coverPath.isEmpty()) {
-                    song.setCoverUrl("http://localhost:8080/covers/" + coverPath);
+        return builder.build();
+    }
+
+    /**
+     * Bulk load a song's fingerprints into the fingerprints table (CSV + LOAD DATA LOCAL INFILE)
+     * and record their number in songs.fingerprint_count. Replaces the count, so delete old rows first.
+     */
+    public void saveFingerprints(int songId, FingerprintBuffer fingerprints) throws IOException {
+        Path tempCsv = Paths.get("./temp_fingerprints_" + UUID.randomUUID() + ".csv");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempCsv)) {
+                for (int i = 0; i < fingerprints.size(); i++) {
+                    writer.write(songId + "," + fingerprints.hash(i) + "," + fingerprints.offset(i));
+                    writer.newLine();
                 }
+            }
 
-                // Optional song URL
-                Object songUrlObj = row.get("song_url");
-                if (songUrlObj != null) {
-                    song.setSongUrl(songUrlObj.toString());
+            String loadSql = "LOAD DATA LOCAL INFILE ? INTO TABLE fingerprints " +
+                    "FIELDS TERMINATED BY ',' " +
+                    "LINES TERMINATED BY '\\n' " +
+                    "(song_id, hash, offset)";
+
+            jdbcTemplate.execute((Connection conn) -> {
+                try (PreparedStatement ps = conn.prepareStatement(loadSql)) {
+                    ps.setString(1, tempCsv.toAbsolutePath().toString());
+                    ps.execute();
                 }
+                return null;
+            });
+
+            // Denormalised total read by matching instead of counting rows
+            jdbcTemplate.update("UPDATE songs SET fingerprint_count = ? WHERE id = ?", fingerprints.size(), songId);
+        } finally {
+            Files.deleteIfExists(tempCsv);
+        }
+    }
+
+    /**
+     * Ids of songs whose fingerprints were generated with an older hash version
+     */
+    public Set<Long> getLegacyHashSongIds() {
+        Set<Long> songIds = new HashSet<>();
+        try {
+            String sql = "SELECT id FROM songs WHERE hash_version < ?";
+            songIds.addAll(jdbcTemplate.queryForList(sql, Long.class, FingerprintService.CURRENT_HASH_VERSION));
+        } catch (Exception e) {
+            System.err.println("Error getting legacy hash songs: " + e.getMessage());
+        }
+        return songIds;
+    }
 
+    /**
+     * Find a song by its ID
+     */
+    public Song findById(Long songId) {
+        Song cached = songCache.get(songId);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            String sql = "SELECT id, title, artist, album, cover_path, song_url FROM songs WHERE id = ?";
+
+            List<Map<String, Object>> result = jdbcTemplate.queryForList(sql, songId);
+
+            if (!result.isEmpty()) {
+                Song song = mapSong(result.get(0));
+                songCache.put(songId, song);
                 return song;
             }
         } catch (Exception e) {
@@ -148,6 +243,82 @@ public class SongService {
         return null;
     }
 
+    /**
+     * Find several songs at once: cached songs are served from memory, the rest in one query.
+     * Ids without a song are left out of the result.
+     */
+    public Map<Long, Song> findByIds(List<Long> songIds) {
+        Map<Long, Song> songs = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long songId : songIds) {
+            Song cached = songCache.get(songId);
+            if (cached != null) {
+                songs.put(songId, cached);
+            } else {
+                missing.add(songId);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return songs;
+        }
+
+        try {
+            String placeholders = missing.stream().map(id -> "?").collect(Collectors.joining(","));
+            String sql = "SELECT id, title, artist, album, cover_path, song_url FROM songs WHERE id IN (" + placeholders + ")";
+
+            for (Map<String, Object> row : jdbcTemplate.queryForList(sql, missing.toArray())) {
+                Song song = mapSong(row);
+                Long songId = (long) song.getId();
+                songCache.put(songId, song);
+                songs.put(songId, song);
+            }
+        } catch (Exception e) {
+            System.err.println("Error finding songs by ID: " + e.getMessage());
+        }
+
+        return songs;
+    }
+
+    /**
+     * Drop a song's cached metadata. Call after the song is inserted, changed or deleted.
+     */
+    public void evictSong(Long songId) {
+        songCache.remove(songId);
+    }
+
+    private Song mapSong(Map<String, Object> row) {
+        Song song = new Song();
+
+        // Handle different possible data types for id
+        Object idObj = row.get("id");
+        if (idObj instanceof Integer) {
+            song.setId((Integer) idObj);
+        } else if (idObj instanceof Long) {
+            song.setId(((Long) idObj).intValue());
+        }
+
+        song.setTitle((String) row.get("title"));
+        song.setArtist((String) row.get("artist"));
+        song.setAlbum((String) row.get("album"));
+
+        String coverPath = (String) row.get("cover_path");
+        song.setCoverPath(coverPath);
+
+        // Automatically generate URL to cover image
+        if (coverPath != null && !coverPath.isEmpty()) {
+            song.setCoverUrl("http://localhost:8080/covers/" + coverPath);
+        }
+
+        // Optional song URL
+        Object songUrlObj = row.get("song_url");
+        if (songUrlObj != null) {
+            song.setSongUrl(songUrlObj.toString());
+        }
+
+        return song;
+    }
+
     /**
      * Helper method to get song title by ID (for debugging purposes)
      */
@@ -193,6 +364,10 @@ public class SongService {
      * Get total count of fingerprints in database (for debugging)
      */
     public int getTotalFingerprintCount() {
+        if (fingerprintIndex.isReady()) {
+            return (int) fingerprintIndex.getTotalFingerprintCount();
+        }
+
         try {
             String sql = "SELECT COUNT(*) as count FROM fingerprints";
             List<Map<String, Object>> result = jdbcTemplate.queryForList(sql);
@@ -330,7 +505,7 @@ public class SongService {
      */
     public int getFingerprintCountForSong(Long songId) {
         try {
-            String sql = "SELECT COUNT(*) as count FROM fingerprints WHERE song_id = ?";
+            String sql = "SELECT fingerprint_count as count FROM songs WHERE id = ?";
             List<Map<String, Object>> result = jdbcTemplate.queryForList(sql, songId);
 
             if (!result.isEmpty()) {
@@ -349,7 +524,8 @@ public class SongService {
     }
 
     /**
-     * Get fingerprint counts for multiple songs at once (more efficient)
+     * Get fingerprint counts for multiple songs at once: from the resident index when it is loaded,
+     * otherwise from songs.fingerprint_count
      */
     public Map<Long, Integer> getFingerprintCountsForSongs(List<Long> songIds) {
         Map<Long, Integer> counts = new HashMap<>();
@@ -358,10 +534,20 @@ public class SongService {
             return counts;
         }
 
+        if (fingerprintIndex.isReady()) {
+            for (Long songId : songIds) {
+                int count = fingerprintIndex.getFingerprintCount(songId.intValue());
+                if (count > 0) {
+                    counts.put(songId, count);
+                }
+            }
+            return counts;
+        }
+
         try {
             // Create placeholders for IN clause
             String placeholders = songIds.stream().map(id -> "?").collect(Collectors.joining(","));
-            String sql = "SELECT song_id, COUNT(*) as count FROM fingerprints WHERE song_id IN (" + placeholders + ") GROUP BY song_id";
+            String sql = "SELECT id as song_id, fingerprint_count as count FROM songs WHERE id IN (" + placeholders + ")";
 
             List<Map<String, Object>> results = jdbcTemplate.queryForList(sql, songIds.toArray());
 
@@ -387,7 +573,10 @@ public class SongService {
                     count = 0;
                 }
 
-                counts.put(songId, count);
+                // A zero count is stale (rows saved before the column existed); leave it to the caller's default
+                if (count > 0) {
+                    counts.put(songId, count);
+                }
             }
 
         } catch (Exception e) {
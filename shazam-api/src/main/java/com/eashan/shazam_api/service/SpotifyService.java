@@ -13,6 +13,7 @@ import org.springframework.util.MultiValueMap;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class SpotifyService {
@@ -28,7 +29,20 @@ public class SpotifyService {
     private String accessToken;
     private Instant tokenExpiration;
 
-    private synchronized String getAccessToken() {
+    // A lock rather than synchronized: the token request blocks on HTTP, and a virtual thread
+    // blocked inside a monitor would pin its carrier thread
+    private final ReentrantLock tokenLock = new ReentrantLock();
+
+    private String getAccessToken() {
+        tokenLock.lock();
+        try {
+            return fetchAccessToken();
+        } finally {
+            tokenLock.unlock();
+        }
+    }
+
+    private String fetchAccessToken() {
         // Check if token exists and is not expired (with 1-minute buffer)
         if (accessToken != null && tokenExpiration != null &&
                 tokenExpiration.isAfter(Instant.now().plusSeconds(60))) {
@@ -0,0 +1,247 @@
+package com.eashan.shazam_api.service;
+
+import java.util.Arrays;
+
+/**
+ * Offset-alignment votes for a match request: how many clip fingerprints agree on each
+ * (song, offset delta) pair, plus the total votes per song.
+ * Both counters are open-addressing tables over primitive arrays, so voting allocates nothing per posting.
+ * Not thread-safe; one table per request.
+ */
+public class VoteTable {
+
+    private static final int DEFAULT_EXPECTED_VOTES = 1 << 12;
+
+    // (songId, delta) -> votes
+    private final LongIntMap deltaVotes;
+    // songId -> votes
+    private final LongIntMap songVotes;
+    // songId -> votes of its strongest single delta
+    private final LongIntMap songPeaks;
+    private long totalVotes = 0;
+
+    public VoteTable() {
+        this(DEFAULT_EXPECTED_VOTES);
+    }
+
+    public VoteTable(int expectedVotes) {
+        this.deltaVotes = new LongIntMap(expectedVotes);
+        this.songVotes = new LongIntMap(Math.max(16, expectedVotes / 16));
+        this.songPeaks = new LongIntMap(Math.max(16, expectedVotes / 16));
+    }
+
+    public void vote(int songId, int delta) {
+        int binVotes = deltaVotes.increment(((long) songId << 32) | (delta & 0xFFFFFFFFL));
+        songVotes.increment(songId);
+        if (binVotes > songPeaks.get(songId, 0)) {
+            songPeaks.put(songId, binVotes);
+        }
+        totalVotes++;
+    }
+
+    /**
+     * Strongest single-delta vote count of the leading song and of the runner-up song,
+     * a running lower bound on their alignment scores
+     */
+    public int[] topPeaks() {
+        int leader = 0;
+        int runnerUp = 0;
+        for (int slot = 0; slot < songPeaks.keys.length; slot++) {
+            if (songPeaks.used[slot]) {
+                int peak = songPeaks.values[slot];
+                if (peak > leader) {
+                    runnerUp = leader;
+                    leader = peak;
+                } else if (peak > runnerUp) {
+                    runnerUp = peak;
+                }
+            }
+        }
+        return new int[]{leader, runnerUp};
+    }
+
+    public long getTotalVotes() { return totalVotes; }
+    public int getSongCount() { return songVotes.size; }
+
+    /**
+     * The maxSongs songs with the strongest single-delta bin (ties by lower song id) with their
+     * delta histograms. Ranking by the best bin rather than total votes keeps a true match whose
+     * votes line up over songs that collect more votes scattered across many deltas.
+     * Songs outside that set are pruned before their histograms are built.
+     */
+    public Candidates topCandidates(int maxSongs) {
+        // Rank songs: strongest bin descending, then song id ascending
+        long[] ranked = new long[songPeaks.size];
+        int n = 0;
+        for (int slot = 0; slot < songPeaks.keys.length; slot++) {
+            if (songPeaks.used[slot]) {
+                int songId = (int) songPeaks.keys[slot];
+                ranked[n++] = ((long) songPeaks.values[slot] << 32) | (Integer.MAX_VALUE - songId);
+            }
+        }
+        Arrays.sort(ranked);
+
+        int count = Math.min(maxSongs, n);
+        int[] songIds = new int[count];
+        int[] votes = new int[count];
+        LongIntMap rankOf = new LongIntMap(count);
+        for (int i = 0; i < count; i++) {
+            songIds[i] = Integer.MAX_VALUE - (int) ranked[n - 1 - i];
+            votes[i] = songVotes.get(songIds[i], 0);
+            rankOf.put(songIds[i], i);
+        }
+
+        // Size each kept song's histogram, then fill it
+        int[] starts = new int[count + 1];
+        for (int slot = 0; slot < deltaVotes.keys.length; slot++) {
+            if (deltaVotes.used[slot]) {
+                int rank = rankOf.get(deltaVotes.keys[slot] >> 32, -1);
+                if (rank >= 0) {
+                    starts[rank + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            starts[i + 1] += starts[i];
+        }
+
+        // Entries packed as delta << 32 | count, so sorting orders by delta
+        long[] entries = new long[starts[count]];
+        int[] fill = Arrays.copyOf(starts, count);
+        for (int slot = 0; slot < deltaVotes.keys.length; slot++) {
+            if (deltaVotes.used[slot]) {
+                long key = deltaVotes.keys[slot];
+                int rank = rankOf.get(key >> 32, -1);
+                if (rank >= 0) {
+                    int delta = (int) key;
+                    entries[fill[rank]++] = ((long) delta << 32) | deltaVotes.values[slot];
+                }
+            }
+        }
+
+        int[] deltas = new int[entries.length];
+        int[] counts = new int[entries.length];
+        for (int i = 0; i < count; i++) {
+            Arrays.sort(entries, starts[i], starts[i + 1]);
+        }
+        for (int j = 0; j < entries.length; j++) {
+            deltas[j] = (int) (entries[j] >> 32);
+            counts[j] = (int) entries[j];
+        }
+
+        return new Candidates(songIds, votes, starts, deltas, counts);
+    }
+
+    /**
+     * Candidate songs in rank order. The deltas of candidate i are entries [start(i), end(i)),
+     * sorted by delta ascending.
+     */
+    public static class Candidates {
+        private final int[] songIds;
+        private final int[] votes;
+        private final int[] starts;
+        private final int[] deltas;
+        private final int[] counts;
+
+        Candidates(int[] songIds, int[] votes, int[] starts, int[] deltas, int[] counts) {
+            this.songIds = songIds;
+            this.votes = votes;
+            this.starts = starts;
+            this.deltas = deltas;
+            this.counts = counts;
+        }
+
+        public int size() { return songIds.length; }
+        public int songId(int i) { return songIds[i]; }
+        public int totalVotes(int i) { return votes[i]; }
+        public int start(int i) { return starts[i]; }
+        public int end(int i) { return starts[i + 1]; }
+        public int delta(int entry) { return deltas[entry]; }
+        public int count(int entry) { return counts[entry]; }
+    }
+
+    /**
+     * Open-addressing long -> int counter, load factor at or below 0.5
+     */
+    private static class LongIntMap {
+        long[] keys;
+        int[] values;
+        boolean[] used;
+        int size = 0;
+        private int mask;
+
+        LongIntMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(8, expected) * 2 - 1) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            used = new boolean[capacity];
+            mask = capacity - 1;
+        }
+
+        int increment(long key) {
+            int slot = slotFor(key);
+            if (used[slot]) {
+                return ++values[slot];
+            }
+            insert(slot, key, 1);
+            return 1;
+        }
+
+        void put(long key, int value) {
+            int slot = slotFor(key);
+            if (used[slot]) {
+                values[slot] = value;
+                return;
+            }
+            insert(slot, key, value);
+        }
+
+        int get(long key, int missing) {
+            int slot = slotFor(key);
+            return used[slot] ? values[slot] : missing;
+        }
+
+        private int slotFor(long key) {
+            int slot = mix(key) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void insert(int slot, long key, int value) {
+            keys[slot] = key;
+            values[slot] = value;
+            used[slot] = true;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    int slot = mix(oldKeys[i]) & mask;
+                    while (used[slot]) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                    used[slot] = true;
+                }
+            }
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
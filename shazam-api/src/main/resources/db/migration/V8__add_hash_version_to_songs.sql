@@ -0,0 +1,5 @@
+-- Hash scheme used for a song's rows in fingerprints:
+-- 1 = SHA-1 of "f1:f2:dt" (existing rows), 2 = packed bit-field hash,
+-- 3 = packed with offsets in frames, 4 = frames on audio resampled to 11025 Hz
+-- (see FingerprintService.HASH_VERSION_*)
+ALTER TABLE songs ADD COLUMN hash_version TINYINT NOT NULL DEFAULT 1;
@@ -0,0 +1,4 @@
+-- Number of rows a song has in fingerprints, kept up to date when fingerprints are saved
+ALTER TABLE songs ADD COLUMN fingerprint_count INT NOT NULL DEFAULT 0;
+
+UPDATE songs s SET fingerprint_count = (SELECT COUNT(*) FROM fingerprints f WHERE f.song_id = s.id);
@@ -0,0 +1,100 @@
+package com.eashan.shazam_api.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AlignmentClustersTests {
+
+	@Test
+	void strongestDeltasJoinTheFirstClusterThatStaysWithinSpread() {
+		VoteTable votes = new VoteTable();
+		vote(votes, 1000, 20);
+		vote(votes, 1040, 6);
+		vote(votes, 1070, 2);
+		vote(votes, 1090, 3); // beyond half the spread from the 1000 seed, but the cluster still spans <= 150
+		vote(votes, 1160, 5); // would stretch the first cluster past 150
+		vote(votes, 5000, 4);
+		vote(votes, 5010, 1);
+
+		List<AlignmentClusters.Cluster> clusters =
+				AlignmentClusters.cluster(votes.topCandidates(1), 0, 150);
+
+		assertEquals(3, clusters.size());
+		assertEquals(31, clusters.get(0).getTotalMatches());
+		assertEquals(4, clusters.get(0).getOffsetCount());
+		assertEquals(1000, clusters.get(0).getMinOffset());
+		assertEquals(1090, clusters.get(0).getMaxOffset());
+		assertEquals(5, clusters.get(1).getTotalMatches());
+		assertEquals(1160, clusters.get(1).getMinOffset());
+		assertEquals(5, clusters.get(2).getTotalMatches());
+		assertEquals(1.0 - 90 / 2000.0, clusters.get(0).getTightness(), 1e-12);
+		assertEquals(1.0, clusters.get(1).getTightness(), 1e-12);
+	}
+
+	@Test
+	void matchesFirstFitOverAllClusters() {
+		Random random = new Random(9);
+		for (int round = 0; round < 300; round++) {
+			VoteTable votes = new VoteTable();
+			int deltas = 1 + random.nextInt(60);
+			for (int i = 0; i < deltas; i++) {
+				vote(votes, random.nextInt(40) - 20, 1 + random.nextInt(4));
+			}
+			int maxSpread = 1 + random.nextInt(6);
+			VoteTable.Candidates candidates = votes.topCandidates(1);
+
+			List<AlignmentClusters.Cluster> clusters = AlignmentClusters.cluster(candidates, 0, maxSpread);
+			List<int[]> expected = firstFit(candidates, maxSpread);
+			assertEquals(expected.size(), clusters.size(), "round " + round);
+			for (int c = 0; c < expected.size(); c++) {
+				AlignmentClusters.Cluster cluster = clusters.get(c);
+				assertArrayEquals(expected.get(c), new int[]{cluster.getMinOffset(), cluster.getMaxOffset(),
+						cluster.getOffsetCount(), cluster.getTotalMatches()}, "round " + round + " cluster " + c);
+			}
+		}
+	}
+
+	/**
+	 * The original grouping: strongest deltas first (ties by lower delta), each into the first cluster
+	 * that stays within maxSpread. Clusters as {min, max, offsets, matches}.
+	 */
+	private static List<int[]> firstFit(VoteTable.Candidates candidates, int maxSpread) {
+		List<int[]> entries = new ArrayList<>();
+		for (int i = candidates.start(0); i < candidates.end(0); i++) {
+			entries.add(new int[]{candidates.delta(i), candidates.count(i)});
+		}
+		entries.sort((a, b) -> a[1] != b[1] ? Integer.compare(b[1], a[1]) : Integer.compare(a[0], b[0]));
+
+		List<int[]> clusters = new ArrayList<>();
+		for (int[] entry : entries) {
+			int[] target = null;
+			for (int[] cluster : clusters) {
+				if (Math.max(cluster[1], entry[0]) - Math.min(cluster[0], entry[0]) <= maxSpread) {
+					target = cluster;
+					break;
+				}
+			}
+			if (target == null) {
+				target = new int[]{entry[0], entry[0], 0, 0};
+				clusters.add(target);
+			}
+			target[0] = Math.min(target[0], entry[0]);
+			target[1] = Math.max(target[1], entry[0]);
+			target[2]++;
+			target[3] += entry[1];
+		}
+		return clusters;
+	}
+
+	private static void vote(VoteTable votes, int delta, int count) {
+		for (int i = 0; i < count; i++) {
+			votes.vote(42, delta);
+		}
+	}
+}
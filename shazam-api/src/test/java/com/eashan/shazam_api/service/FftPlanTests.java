@@ -0,0 +1,126 @@
+package com.eashan.shazam_api.service;
+
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class FftPlanTests {
+
+	private static final int WINDOW_SIZE = 4096;
+	private static final int OVERLAP = 2048;
+	private static final double SAMPLE_RATE = 44100.0;
+
+	@Test
+	void magnitudesMatchCommonsMathTransform() {
+		Random random = new Random(42);
+		double[] samples = new double[WINDOW_SIZE * 3];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = Math.sin(2 * Math.PI * 440 * i / 44100.0) * 0.6 + (random.nextDouble() - 0.5) * 0.2;
+		}
+
+		FftPlan plan = new FftPlan(WINDOW_SIZE);
+		double[] magnitudes = new double[WINDOW_SIZE / 2];
+
+		for (int start = 0; start + WINDOW_SIZE <= samples.length; start += WINDOW_SIZE / 2) {
+			plan.magnitudes(samples, start, magnitudes);
+			double[] expected = referenceMagnitudes(samples, start);
+
+			for (int k = 0; k < expected.length; k++) {
+				assertEquals(expected[k], magnitudes[k], 1e-12 * Math.max(1.0, expected[k]), "bin " + k);
+			}
+		}
+	}
+
+	@Test
+	void referenceClipHashesMatchCommonsMathPipeline() {
+		// Ten seconds of a sweeping tone, a gated second tone and noise, normalized like a decoded track
+		Random random = new Random(42);
+		double[] samples = new double[(int) SAMPLE_RATE * 10];
+		for (int i = 0; i < samples.length; i++) {
+			double t = i / SAMPLE_RATE;
+			double tone = 300 + 200 * Math.sin(2 * Math.PI * 0.25 * t);
+			samples[i] = 0.5 * Math.sin(2 * Math.PI * tone * t)
+					+ 0.3 * Math.sin(2 * Math.PI * 1250 * t) * (i / 20000 % 2)
+					+ 0.1 * (random.nextDouble() - 0.5);
+		}
+		double peak = 0;
+		for (double sample : samples) {
+			peak = Math.max(peak, Math.abs(sample));
+		}
+
+		FingerprintService.FingerprintStream stream = new FingerprintService().new FingerprintStream(
+				peak, new int[]{FingerprintService.HASH_VERSION_PACKED}, false);
+		stream.begin(SAMPLE_RATE);
+		stream.accept(samples, samples.length);
+		stream.finish();
+		FingerprintBuffer actual = stream.getFingerprints(FingerprintService.HASH_VERSION_PACKED);
+
+		List<int[]> expected = referenceFingerprints(samples, peak);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i)[0], actual.hash(i), "hash " + i);
+			assertEquals(expected.get(i)[1], actual.offset(i), "offset " + i);
+		}
+	}
+
+	/**
+	 * Fingerprints as FingerprintService computed them before the plan: commons-math magnitudes per
+	 * frame, the top peaks, then each anchor paired with the next FAN_VALUE peaks within 200 ms
+	 */
+	private static List<int[]> referenceFingerprints(double[] samples, double peak) {
+		double[] normalized = new double[samples.length];
+		for (int i = 0; i < samples.length; i++) {
+			normalized[i] = samples[i] / peak;
+		}
+
+		PeakPicker picker = new PeakPicker(10, 10, 512, 0.01, 5);
+		List<int[]> peaks = new ArrayList<>();
+		for (int start = 0; start + WINDOW_SIZE <= normalized.length; start += OVERLAP) {
+			int timeMs = (int) ((double) start / SAMPLE_RATE * 1000.0);
+			for (int freq : picker.pick(referenceMagnitudes(normalized, start))) {
+				peaks.add(new int[]{freq, timeMs});
+			}
+		}
+
+		List<int[]> fingerprints = new ArrayList<>();
+		for (int i = 0; i < peaks.size(); i++) {
+			int targets = 0;
+			for (int j = i + 1; j < peaks.size() && targets < 15; j++) {
+				int timeDelta = peaks.get(j)[1] - peaks.get(i)[1];
+				if (timeDelta <= 200) {
+					fingerprints.add(new int[]{
+							FingerprintService.generatePackedHash(peaks.get(i)[0], peaks.get(j)[0], timeDelta),
+							peaks.get(i)[1]});
+					targets++;
+				}
+			}
+		}
+		return fingerprints;
+	}
+
+	// The commons-math path FingerprintService used before the plan was introduced
+	private static double[] referenceMagnitudes(double[] samples, int start) {
+		Complex[] window = new Complex[WINDOW_SIZE];
+		for (int i = 0; i < WINDOW_SIZE; i++) {
+			double multiplier = 0.54 - 0.46 * Math.cos(2 * Math.PI * i / (WINDOW_SIZE - 1));
+			window[i] = new Complex(samples[start + i] * multiplier, 0);
+		}
+
+		Complex[] result = new FastFourierTransformer(DftNormalization.UNITARY).transform(window, TransformType.FORWARD);
+		double[] magnitudes = new double[WINDOW_SIZE / 2];
+		for (int i = 0; i < magnitudes.length; i++) {
+			magnitudes[i] = result[i].abs();
+		}
+		return magnitudes;
+	}
+}
@@ -0,0 +1,28 @@
+package com.eashan.shazam_api.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FingerprintBufferTests {
+
+	@Test
+	void keepsPairsAcrossGrowthAndSortsByHash() {
+		FingerprintBuffer buffer = new FingerprintBuffer(2);
+		buffer.add(7, 300);
+		buffer.add(Integer.MAX_VALUE, 0);
+		buffer.add(-5, Integer.MAX_VALUE);
+		buffer.add(7, 100);
+
+		assertEquals(4, buffer.size());
+		assertEquals(-5, buffer.hash(2));
+		assertEquals(Integer.MAX_VALUE, buffer.offset(2));
+		assertArrayEquals(new int[]{7, Integer.MAX_VALUE, -5, 7}, buffer.hashes());
+
+		buffer.sortByHash();
+		assertArrayEquals(new int[]{-5, 7, 7, Integer.MAX_VALUE}, buffer.hashes());
+		assertEquals(100, buffer.offset(1));
+		assertEquals(300, buffer.offset(2));
+	}
+}
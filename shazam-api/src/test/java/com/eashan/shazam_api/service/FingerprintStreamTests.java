@@ -0,0 +1,152 @@
+package com.eashan.shazam_api.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class FingerprintStreamTests {
+
+	private static final double SAMPLE_RATE = 44100.0;
+
+	@Test
+	void parallelStreamMatchesSequentialOutput() {
+		// Long enough for several parallel blocks plus a partial one
+		double[] samples = syntheticTrack(44100 * 40 + 12345);
+		FingerprintService service = new FingerprintService();
+
+		FingerprintBuffer sequential = fingerprint(service, samples, false);
+		FingerprintBuffer parallel = fingerprint(service, samples, true);
+
+		assertFalse(sequential.isEmpty());
+		assertEquals(sequential.size(), parallel.size());
+		for (int i = 0; i < sequential.size(); i++) {
+			assertEquals(sequential.hash(i), parallel.hash(i), "hash " + i);
+			assertEquals(sequential.offset(i), parallel.offset(i), "offset " + i);
+		}
+	}
+
+	@Test
+	void frameOffsetsPairTheSamePeaksAsMilliseconds() {
+		double[] samples = syntheticTrack(44100 * 10);
+		FingerprintService service = new FingerprintService();
+		FingerprintService.FingerprintStream stream = service.new FingerprintStream(
+				1.0, new int[]{FingerprintService.HASH_VERSION_FRAMES, FingerprintService.HASH_VERSION_PACKED}, false);
+		stream.begin(SAMPLE_RATE);
+		stream.accept(samples, samples.length);
+		stream.finish();
+
+		FingerprintBuffer frames = stream.getFingerprints(FingerprintService.HASH_VERSION_FRAMES);
+		FingerprintBuffer millis = stream.getFingerprints(FingerprintService.HASH_VERSION_PACKED);
+
+		assertFalse(frames.isEmpty());
+		assertEquals(millis.size(), frames.size());
+		double frameMs = FingerprintService.frameDurationMs(SAMPLE_RATE);
+		for (int i = 0; i < frames.size(); i++) {
+			assertEquals(frames.offset(i) * frameMs, millis.offset(i), 1.0);
+		}
+	}
+
+	@Test
+	void liveHashesMatchTwoPassHashesOnceThePeakHasBeenRead() throws Exception {
+		// Quiet track whose loudest sample is at 4 s: until then the live running peak is lower than
+		// the two-pass peak, so more bins clear the magnitude threshold and different peaks get paired
+		double burstSeconds = 4;
+		double[] samples = syntheticTrack(44100 * 12);
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] *= i < burstSeconds * SAMPLE_RATE ? 0.1 : 0.5;
+		}
+		samples[(int) (burstSeconds * SAMPLE_RATE)] = 0.99;
+		byte[] wav = wav(samples);
+
+		FingerprintService service = new FingerprintService();
+		ReflectionTestUtils.setField(service, "audioProcessor", new AudioProcessor());
+		int[] versions = {FingerprintService.CURRENT_HASH_VERSION};
+		InputStreamSource source = () -> new ByteArrayInputStream(wav);
+		FingerprintBuffer twoPass = service.fingerprintAudio(source, versions, false).getFingerprints();
+		FingerprintBuffer live = service.fingerprintLive(new ByteArrayInputStream(wav), versions, progress -> true)
+				.getFingerprints();
+
+		// Anchors a second past the loudest sample are paired from frames normalized by the same peak
+		int cutoff = (int) ((burstSeconds + 1) * 1000 /
+				FingerprintService.offsetUnitMs(FingerprintService.CURRENT_HASH_VERSION, SAMPLE_RATE));
+		FingerprintBuffer twoPassAfter = fromOffset(twoPass, cutoff);
+		FingerprintBuffer liveAfter = fromOffset(live, cutoff);
+		assertFalse(twoPassAfter.isEmpty());
+		assertEquals(twoPassAfter.size(), liveAfter.size());
+		for (int i = 0; i < twoPassAfter.size(); i++) {
+			assertEquals(twoPassAfter.hash(i), liveAfter.hash(i), "hash " + i);
+			assertEquals(twoPassAfter.offset(i), liveAfter.offset(i), "offset " + i);
+		}
+
+		// Before it the live hashes are not the two-pass ones
+		assertNotEquals(twoPass.size() - twoPassAfter.size(), live.size() - liveAfter.size());
+	}
+
+	private static FingerprintBuffer fromOffset(FingerprintBuffer fingerprints, int offset) {
+		FingerprintBuffer kept = new FingerprintBuffer();
+		for (int i = 0; i < fingerprints.size(); i++) {
+			if (fingerprints.offset(i) >= offset) {
+				kept.add(fingerprints.hash(i), fingerprints.offset(i));
+			}
+		}
+		return kept;
+	}
+
+	private static byte[] wav(double[] samples) throws Exception {
+		byte[] pcm = new byte[samples.length * 2];
+		for (int i = 0; i < samples.length; i++) {
+			short value = (short) Math.round(Math.max(-1, Math.min(1, samples[i])) * 32767);
+			pcm[2 * i] = (byte) value;
+			pcm[2 * i + 1] = (byte) (value >> 8);
+		}
+		AudioFormat format = new AudioFormat((float) SAMPLE_RATE, 16, 1, true, false);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm), format, samples.length),
+				AudioFileFormat.Type.WAVE, out);
+		return out.toByteArray();
+	}
+
+	private static FingerprintBuffer fingerprint(FingerprintService service, double[] samples, boolean parallel) {
+		FingerprintService.FingerprintStream stream = service.new FingerprintStream(
+				1.0, new int[]{FingerprintService.CURRENT_HASH_VERSION}, parallel);
+		stream.begin(SAMPLE_RATE);
+
+		// Feed uneven chunks, like a decoder would
+		Random chunks = new Random(7);
+		int position = 0;
+		while (position < samples.length) {
+			int count = Math.min(samples.length - position, 1 + chunks.nextInt(10000));
+			double[] chunk = new double[count];
+			System.arraycopy(samples, position, chunk, 0, count);
+			stream.accept(chunk, count);
+			position += count;
+		}
+		stream.finish();
+		return stream.getFingerprints(FingerprintService.CURRENT_HASH_VERSION);
+	}
+
+	private static double[] syntheticTrack(int length) {
+		Random random = new Random(42);
+		double[] samples = new double[length];
+		for (int i = 0; i < length; i++) {
+			double t = i / SAMPLE_RATE;
+			double tone = 300 + 200 * Math.sin(2 * Math.PI * 0.25 * t);
+			samples[i] = 0.5 * Math.sin(2 * Math.PI * tone * t)
+					+ 0.3 * Math.sin(2 * Math.PI * 1250 * t) * (i / 20000 % 2)
+					+ 0.1 * (random.nextDouble() - 0.5);
+		}
+		return samples;
+	}
+}
@@ -0,0 +1,131 @@
+package com.eashan.shazam_api.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexShardTests {
+
+	@Test
+	void segmentsServeTheSamePostingsAsOneTable() throws IOException {
+		Path dir = Files.createTempDirectory("index-shard");
+		try {
+			FingerprintBuffer[] songs = new FingerprintBuffer[20];
+			PostingTable expected = new PostingTable();
+			Random random = new Random(7);
+			for (int songId = 0; songId < songs.length; songId++) {
+				songs[songId] = new FingerprintBuffer();
+				for (int i = 0; i < 2000; i++) {
+					// Narrow hash range so lists hold postings of several songs, plus a few extreme hashes
+					int hash = i % 100 == 0 ? random.nextInt() : random.nextInt(5000) - 2500;
+					songs[songId].add(hash, random.nextInt(300000));
+				}
+			}
+
+			IndexShard shard = new IndexShard(0);
+			PostingTable table = new PostingTable();
+			for (int songId = 0; songId < 17; songId++) {
+				IndexShard.addAll(table, songId, songs[songId], 0, 1);
+				IndexShard.addAll(expected, songId, songs[songId], 0, 1);
+			}
+			shard.replace(table);
+			assertFalse(shard.isPersisted());
+			assertTrue(shard.compact(dir.resolve("shard-0-1.fpx"), 8, 1).isEmpty());
+			assertTrue(shard.isPersisted());
+			assertSamePostings(expected, shard, songs);
+
+			// One segment per upload on top of the mapped file; deletes are filtered on lookup
+			shard.removeSong(3);
+			expected.removeSong(3);
+			for (int songId = 17; songId < songs.length; songId++) {
+				Path segment = dir.resolve("shard-0-" + songId + ".fpx");
+				IndexFile.write(segment, 0, 1, IndexShard.songTable(songId, songs[songId], 0, 1));
+				shard.addSegment(MappedIndexFile.open(segment));
+				IndexShard.addAll(expected, songId, songs[songId], 0, 1);
+			}
+			assertSamePostings(expected, shard, songs);
+
+			// Tiering merges the small newest segments and leaves the large one alone
+			assertFalse(shard.needsCompaction(8, true));
+			List<Path> replaced = shard.compact(dir.resolve("shard-0-30.fpx"), 3, 1);
+			assertEquals(3, replaced.size());
+			assertFalse(replaced.contains(dir.resolve("shard-0-1.fpx")));
+			assertSamePostings(expected, shard, songs);
+
+			// Once deletes make up too much of a segment everything is merged and they are dropped for good
+			shard.removeSong(18);
+			expected.removeSong(18);
+			assertTrue(shard.needsCompaction(8, true));
+			replaced = shard.compact(dir.resolve("shard-0-31.fpx"), 8, 1);
+			assertEquals(2, replaced.size());
+			assertSamePostings(expected, shard, songs);
+
+			MappedIndexFile merged = MappedIndexFile.open(dir.resolve("shard-0-31.fpx"));
+			assertEquals(expected.getTotalPostings(), merged.getTotalPostings());
+			assertEquals(expected.getSongCount(), merged.getSongCount());
+			assertEquals(0, merged.getSongPostings(3));
+			assertEquals(0, merged.getSongPostings(18));
+		} finally {
+			try (var files = Files.list(dir)) {
+				for (Path file : files.toList()) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(dir);
+		}
+	}
+
+	@Test
+	void longPostingListsRoundTripAcrossPackedBlocks() throws IOException {
+		Path file = Files.createTempFile("index-file", ".fpx");
+		try {
+			PostingTable table = new PostingTable();
+			Random random = new Random(11);
+			for (int i = 0; i < 1000; i++) {
+				// Mostly small song gaps with a few large ids and offsets so blocks get different bit widths
+				int songId = i < 990 ? i / 3 : 2_000_000 + random.nextInt(1_000_000);
+				table.add(songId, 42, i % 7 == 0 ? Integer.MAX_VALUE - i : random.nextInt(400_000));
+			}
+			table.add(5, -7, 0);
+			table.add(5, -7, 0);
+
+			IndexFile.write(file, 0, 1, table);
+			MappedIndexFile mapped = MappedIndexFile.open(file);
+
+			long[] expected = table.get(42);
+			Arrays.sort(expected);
+			assertArrayEquals(expected, mapped.get(42));
+			assertArrayEquals(new long[] {PostingTable.pack(5, 0), PostingTable.pack(5, 0)}, mapped.get(-7));
+			assertEquals(0, mapped.get(43).length);
+			assertEquals(1002, mapped.getTotalPostings());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private static void assertSamePostings(PostingTable expected, IndexShard shard, FingerprintBuffer[] songs) {
+		assertEquals(expected.getTotalPostings(), shard.getTotalPostings());
+		for (int songId = 0; songId < songs.length; songId++) {
+			assertEquals(expected.getSongPostings(songId), shard.getSongPostings(songId), "song " + songId);
+			for (int i = 0; i < songs[songId].size(); i++) {
+				int hash = songs[songId].hash(i);
+				long[] want = expected.get(hash);
+				long[] got = shard.get(hash);
+				Arrays.sort(want);
+				Arrays.sort(got);
+				assertArrayEquals(want, got);
+			}
+		}
+		assertEquals(0, shard.get(Integer.MAX_VALUE).length);
+	}
+}
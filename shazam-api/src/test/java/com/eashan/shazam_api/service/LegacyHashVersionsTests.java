@@ -0,0 +1,42 @@
+package com.eashan.shazam_api.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LegacyHashVersionsTests {
+
+	@Test
+	void tracksRehashedAndDeletedSongs() {
+		LegacyHashVersions versions = new LegacyHashVersions();
+		versions.songStored(7, FingerprintService.HASH_VERSION_SHA1);
+		versions.songStored(3, FingerprintService.HASH_VERSION_FRAMES);
+		versions.songStored(12, FingerprintService.HASH_VERSION_SHA1);
+
+		// A request keeps the versions it started with
+		LegacyHashVersions.Lookup before = versions.lookup();
+		versions.songStored(7, FingerprintService.CURRENT_HASH_VERSION);
+		versions.songDeleted(3);
+		versions.songStored(20, FingerprintService.CURRENT_HASH_VERSION);
+
+		assertEquals(3, before.getSongCount());
+		assertArrayEquals(new int[]{FingerprintService.HASH_VERSION_SHA1, FingerprintService.HASH_VERSION_FRAMES},
+				before.getVersions());
+		assertEquals(FingerprintService.HASH_VERSION_SHA1, before.versionOf(7));
+		assertEquals(FingerprintService.HASH_VERSION_SHA1, before.versionOf(7));
+		assertEquals(FingerprintService.HASH_VERSION_FRAMES, before.versionOf(3));
+		assertEquals(FingerprintService.CURRENT_HASH_VERSION, before.versionOf(20));
+
+		LegacyHashVersions.Lookup after = versions.lookup();
+		assertEquals(1, after.getSongCount());
+		assertArrayEquals(new int[]{FingerprintService.HASH_VERSION_SHA1}, after.getVersions());
+		assertEquals(FingerprintService.CURRENT_HASH_VERSION, after.versionOf(7));
+		assertEquals(FingerprintService.CURRENT_HASH_VERSION, after.versionOf(3));
+		assertEquals(FingerprintService.HASH_VERSION_SHA1, after.versionOf(12));
+
+		versions.songStored(12, FingerprintService.CURRENT_HASH_VERSION);
+		assertTrue(versions.lookup().isEmpty());
+	}
+}
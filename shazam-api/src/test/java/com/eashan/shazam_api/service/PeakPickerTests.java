@@ -0,0 +1,54 @@
+package com.eashan.shazam_api.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class PeakPickerTests {
+
+	@Test
+	void matchesNeighbourhoodScanAndFullSort() {
+		PeakPicker picker = new PeakPicker(10, 10, 512, 0.01, 5);
+		Random random = new Random(5);
+		for (int frame = 0; frame < 500; frame++) {
+			double[] magnitudes = new double[frame % 2 == 0 ? 2048 : 512];
+			for (int i = 0; i < magnitudes.length; i++) {
+				// Coarse levels so plateaus and equal scores come up often
+				magnitudes[i] = frame % 3 == 0 ? random.nextInt(8) * 0.005 : random.nextDouble() * random.nextDouble();
+			}
+			assertArrayEquals(reference(magnitudes), picker.pick(magnitudes), "frame " + frame);
+		}
+	}
+
+	/**
+	 * The original nested-loop scan: strict max within +-10 bins, stable sort by scaled magnitude
+	 */
+	private static int[] reference(double[] magnitudes) {
+		List<int[]> candidates = new ArrayList<>();
+		for (int i = 10; i < Math.min(512, magnitudes.length - 10); i++) {
+			if (magnitudes[i] < 0.01) {
+				continue;
+			}
+			boolean isLocalMax = true;
+			for (int j = Math.max(0, i - 10); j <= Math.min(magnitudes.length - 1, i + 10); j++) {
+				if (j != i && magnitudes[j] >= magnitudes[i]) {
+					isLocalMax = false;
+					break;
+				}
+			}
+			if (isLocalMax) {
+				candidates.add(new int[]{i, (int) (magnitudes[i] * 10000)});
+			}
+		}
+		candidates.sort((a, b) -> Integer.compare(b[1], a[1]));
+		int[] peaks = new int[Math.min(5, candidates.size())];
+		for (int i = 0; i < peaks.length; i++) {
+			peaks[i] = candidates.get(i)[0];
+		}
+		return peaks;
+	}
+}
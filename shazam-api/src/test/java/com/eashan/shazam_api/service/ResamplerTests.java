@@ -0,0 +1,61 @@
+package com.eashan.shazam_api.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResamplerTests {
+
+	@Test
+	void streamedResamplingKeepsTonesBelowNyquistAndRemovesThoseAbove() {
+		int sourceRate = 48000;
+		int length = sourceRate * 2 + 777;
+		double[] tone = new double[length];
+		double[] alias = new double[length];
+		for (int i = 0; i < length; i++) {
+			tone[i] = 0.5 * Math.sin(2 * Math.PI * 1000 * i / sourceRate);
+			alias[i] = 0.5 * Math.sin(2 * Math.PI * 7000 * i / sourceRate);
+		}
+
+		double[] resampled = resampleInChunks(tone, sourceRate);
+		assertEquals((length * 147L + 639) / 640, resampled.length);
+		// Away from the edges the output is the same tone sampled at 11025 Hz, in phase
+		for (int n = 100; n < resampled.length - 100; n++) {
+			double expected = 0.5 * Math.sin(2 * Math.PI * 1000 * n / 11025.0);
+			assertEquals(expected, resampled[n], 0.01, "sample " + n);
+		}
+
+		double[] filtered = resampleInChunks(alias, sourceRate);
+		for (int n = 100; n < filtered.length - 100; n++) {
+			assertTrue(Math.abs(filtered[n]) < 0.01, "sample " + n);
+		}
+	}
+
+	private static double[] resampleInChunks(double[] samples, int sourceRate) {
+		double[] collected = new double[samples.length];
+		int[] size = {0};
+		Resampler resampler = new Resampler(11025f, (chunk, count) -> {
+			System.arraycopy(chunk, 0, collected, size[0], count);
+			size[0] += count;
+		});
+		resampler.start(sourceRate, 1);
+
+		Random chunks = new Random(3);
+		int position = 0;
+		while (position < samples.length) {
+			int count = Math.min(samples.length - position, 1 + chunks.nextInt(5000));
+			double[] chunk = new double[count];
+			System.arraycopy(samples, position, chunk, 0, count);
+			resampler.accept(chunk, count);
+			position += count;
+		}
+		resampler.end();
+
+		double[] output = new double[size[0]];
+		System.arraycopy(collected, 0, output, 0, size[0]);
+		return output;
+	}
+}
@@ -0,0 +1,68 @@
+package com.eashan.shazam_api.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VoteTableTests {
+
+	@Test
+	void ranksSongsAndBuildsDeltaSortedHistograms() {
+		VoteTable votes = new VoteTable(4);
+		for (int i = 0; i < 5; i++) {
+			votes.vote(3, 120);
+		}
+		votes.vote(3, -40);
+		votes.vote(3, -40);
+		votes.vote(9, 0);
+		votes.vote(9, 7);
+		votes.vote(1, 5);
+		votes.vote(1, 5);
+
+		assertEquals(11, votes.getTotalVotes());
+		assertEquals(3, votes.getSongCount());
+
+		// Song 9 and song 1 tie on votes, but song 1's share a delta, so song 9 is pruned
+		VoteTable.Candidates candidates = votes.topCandidates(2);
+		assertEquals(2, candidates.size());
+		assertEquals(3, candidates.songId(0));
+		assertEquals(7, candidates.totalVotes(0));
+		assertEquals(1, candidates.songId(1));
+
+		assertEquals(2, candidates.end(0) - candidates.start(0));
+		assertEquals(-40, candidates.delta(candidates.start(0)));
+		assertEquals(2, candidates.count(candidates.start(0)));
+		assertEquals(120, candidates.delta(candidates.start(0) + 1));
+		assertEquals(5, candidates.count(candidates.start(0) + 1));
+
+		assertEquals(1, candidates.end(1) - candidates.start(1));
+		assertEquals(5, candidates.delta(candidates.start(1)));
+		assertEquals(2, candidates.count(candidates.start(1)));
+	}
+
+	@Test
+	void keepsAlignedSongOverDecoysWithMoreScatteredVotes() {
+		VoteTable votes = new VoteTable();
+		// 100 decoys with 30 votes each, no two on the same delta
+		for (int song = 1; song <= 100; song++) {
+			for (int i = 0; i < 30; i++) {
+				votes.vote(song, i * 7);
+			}
+		}
+		// The true match has fewer votes, but 12 of them agree on one delta
+		int trueMatch = 500;
+		for (int i = 0; i < 12; i++) {
+			votes.vote(trueMatch, 42);
+		}
+		for (int i = 0; i < 8; i++) {
+			votes.vote(trueMatch, 1000 + i);
+		}
+
+		VoteTable.Candidates candidates = votes.topCandidates(100);
+		assertEquals(100, candidates.size());
+		assertEquals(trueMatch, candidates.songId(0));
+		assertEquals(20, candidates.totalVotes(0));
+		// Ties among the decoys go to the lower ids, so the highest one is pruned
+		assertEquals(99, candidates.songId(99));
+	}
+}
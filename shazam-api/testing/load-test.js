@@ -0,0 +1,42 @@
+// k6 load test: chart and checkout traffic while match requests saturate the fingerprint pool.
+// Run against a Razorpay test-mode deployment:
+//   k6 run -e BASE_URL=http://localhost:8080 -e TOKEN=<jwt> -e CLIP=clip.wav testing/load-test.js
+// Compare http_req_duration for the chart/checkout scenarios with spring.threads.virtual.enabled on and off,
+// and watch GET /match/stats for queue depth, wait times and shed requests.
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const AUTH = { headers: { Authorization: `Bearer ${__ENV.TOKEN}` } };
+const clip = open(__ENV.CLIP || 'clip.wav', 'b');
+
+export const options = {
+    scenarios: {
+        charts: { executor: 'constant-arrival-rate', exec: 'charts', rate: 200, timeUnit: '1s', duration: '2m', preAllocatedVUs: 400 },
+        checkout: { executor: 'constant-arrival-rate', exec: 'checkout', rate: 50, timeUnit: '1s', duration: '2m', preAllocatedVUs: 200 },
+        matches: { executor: 'constant-vus', exec: 'matches', vus: 64, duration: '2m' },
+    },
+    thresholds: {
+        'http_req_duration{scenario:charts}': ['p(95)<500'],
+        'http_req_duration{scenario:checkout}': ['p(95)<1000'],
+    },
+};
+
+export function charts() {
+    const res = http.get(`${BASE_URL}/api/charts/global`);
+    check(res, { 'chart ok': (r) => r.status === 200 });
+}
+
+export function checkout() {
+    const res = http.post(`${BASE_URL}/api/payments/create-order`, JSON.stringify({
+        amount: 499, concertId: 1, userId: 1, name: 'Load Test', email: 'load@test.local', phone: '9999999999',
+        ticketDetails: { quantity: 1 },
+    }), { headers: { 'Content-Type': 'application/json' } });
+    check(res, { 'order created': (r) => r.status === 200 });
+}
+
+export function matches() {
+    const res = http.post(`${BASE_URL}/match`, { file: http.file(clip, 'clip.wav', 'audio/wav') }, AUTH);
+    // 429 / 503 are the executor shedding load, not failures
+    check(res, { 'match answered or shed': (r) => [200, 429, 503].includes(r.status) });
+}